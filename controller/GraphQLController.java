@@ -2,23 +2,30 @@ package gov.nih.nci.bento.controller;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonWriter;
 import gov.nih.nci.bento.error.BentoGraphQLException;
 import gov.nih.nci.bento.error.BentoGraphqlError;
+import gov.nih.nci.bento.graphql.BentoDocumentProvider;
 import gov.nih.nci.bento.graphql.BentoGraphQL;
 import gov.nih.nci.bento.model.ConfigurationDAO;
+import gov.nih.nci.bento.service.RedisMemoryReport;
+import gov.nih.nci.bento.service.RedisService;
+import gov.nih.nci.bento.service.WarmUpService;
 import graphql.ExecutionInput;
 import graphql.ExecutionResult;
 import graphql.GraphQL;
 import graphql.language.Document;
 import graphql.language.OperationDefinition;
-import graphql.parser.Parser;
 import lombok.Getter;
 import org.apache.http.client.utils.URIBuilder;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -27,26 +34,45 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 public class GraphQLController {
 
 	private static final Logger logger = LogManager.getLogger(GraphQLController.class);
+	private static final String PERSISTED_QUERY_NOT_FOUND = "PersistedQueryNotFound";
+	private static final String PERSISTED_QUERY_NOT_SUPPORTED = "PersistedQueryNotSupported";
 
 	private final ConfigurationDAO config;
 	private final Gson gson;
 	private final BentoGraphQL bentoGraphQL;
+	private final WarmUpService warmUpService;
+	private final RedisService redisService;
+	private final RedisMemoryReport redisMemoryReport;
 
-	public GraphQLController(ConfigurationDAO config, BentoGraphQL bentoGraphQL){
+	public GraphQLController(ConfigurationDAO config, BentoGraphQL bentoGraphQL, WarmUpService warmUpService,
+			RedisService redisService, RedisMemoryReport redisMemoryReport){
 		this.config = config;
 		this.bentoGraphQL = bentoGraphQL;
+		this.warmUpService = warmUpService;
+		this.redisService = redisService;
+		this.redisMemoryReport = redisMemoryReport;
 		this.gson = new GsonBuilder().serializeNulls().create();
 	}
 
@@ -60,6 +86,30 @@ public class GraphQLController {
 		return ResponseEntity.ok(gson.toJson(Map.of("version", versionString)));
 	}
 
+	@CrossOrigin
+	@RequestMapping(value = "/warmup", method = {RequestMethod.GET},
+			produces = MediaType.APPLICATION_JSON_VALUE + "; charset=utf-8")
+	public ResponseEntity<String> getWarmUpStatus(){
+		HttpStatus status = warmUpService.isReady() ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE;
+		return ResponseEntity.status(status).body(gson.toJson(warmUpService.getStatus()));
+	}
+
+	@CrossOrigin
+	@RequestMapping(value = "/redis-status", method = {RequestMethod.GET},
+			produces = MediaType.APPLICATION_JSON_VALUE + "; charset=utf-8")
+	public ResponseEntity<String> getRedisStatus(){
+		Map<String, Object> status = new LinkedHashMap<>(redisService.getPoolMetrics());
+		status.put("writeBehind", bentoGraphQL.getWriteBehindMetrics());
+		return ResponseEntity.ok(gson.toJson(status));
+	}
+
+	@CrossOrigin
+	@RequestMapping(value = "/redis-memory", method = {RequestMethod.GET},
+			produces = MediaType.APPLICATION_JSON_VALUE + "; charset=utf-8")
+	public ResponseEntity<String> getRedisMemory(){
+		return ResponseEntity.ok(gson.toJson(redisMemoryReport.getReport()));
+	}
+
 	@CrossOrigin
 	@RequestMapping(value = "/neo4j-version", method = {RequestMethod.GET},
 			produces = MediaType.APPLICATION_JSON_VALUE + "; charset=utf-8")
@@ -88,31 +138,94 @@ public class GraphQLController {
 	@RequestMapping(value = "/v1/graphql/", method = RequestMethod.POST,
 			produces = MediaType.APPLICATION_JSON_VALUE + "; charset=utf-8")
 	@ResponseBody
-	public ResponseEntity<String> getPrivateGraphQLResponse(HttpEntity<String> httpEntity){
+	public CompletableFuture<ResponseEntity<StreamingResponseBody>> getPrivateGraphQLResponse(HttpEntity<String> httpEntity){
         logger.info("hit end point:/v1/graphql/");
-        return getGraphQLResponse(httpEntity, bentoGraphQL.getPrivateGraphQL());
+        return getGraphQLBatchResponse(httpEntity, bentoGraphQL.getPrivateGraphQL(),
+				bentoGraphQL.getPrivateDocumentProvider())
+				.thenApply(response -> streamResponse(response, httpEntity.getHeaders()));
 	}
 
 	@CrossOrigin
 	@RequestMapping(value = "/v1/public-graphql/", method = RequestMethod.POST,
 			produces = MediaType.APPLICATION_JSON_VALUE + "; charset=utf-8")
 	@ResponseBody
-	public ResponseEntity<String> getPublicGraphQLResponse(HttpEntity<String> httpEntity){
+	public CompletableFuture<ResponseEntity<StreamingResponseBody>> getPublicGraphQLResponse(HttpEntity<String> httpEntity){
         logger.info("hit end point:/v1/public-graphql/");
-		return getGraphQLResponse(httpEntity, bentoGraphQL.getPublicGraphQL());
+		return getGraphQLBatchResponse(httpEntity, bentoGraphQL.getPublicGraphQL(),
+				bentoGraphQL.getPublicDocumentProvider())
+				.thenApply(response -> streamResponse(response, httpEntity.getHeaders()));
+	}
+
+	private CompletableFuture<ResponseEntity<?>> getGraphQLBatchResponse(HttpEntity<String> httpEntity, GraphQL graphQL,
+			BentoDocumentProvider documentProvider) {
+		JsonElement requestBody;
+		try{
+			requestBody = gson.fromJson(httpEntity.getBody(), JsonElement.class);
+		}
+		catch(JsonParseException e){
+			return CompletableFuture.completedFuture(logAndReturnError(HttpStatus.BAD_REQUEST, e.getMessage()));
+		}
+		if (requestBody != null && requestBody.isJsonObject()) {
+			return getGraphQLResponse(requestBody.getAsJsonObject(), graphQL, documentProvider, false);
+		}
+		if (requestBody == null || !requestBody.isJsonArray()) {
+			return CompletableFuture.completedFuture(logAndReturnError(HttpStatus.BAD_REQUEST,
+					"Request body must be a JSON object or an array of JSON objects"));
+		}
+		// Batched operations run concurrently, each one gets its own result or error in request order
+		JsonArray operations = requestBody.getAsJsonArray();
+		if (operations.size() > config.getMaxBatchOperations()) {
+			return CompletableFuture.completedFuture(logAndReturnError(HttpStatus.BAD_REQUEST,
+					String.format("Maximum number of batched operations exceeded. Provided: %d, Maximum: %d",
+							operations.size(), config.getMaxBatchOperations())));
+		}
+		List<CompletableFuture<Object>> results = new ArrayList<>();
+		for (JsonElement operation: operations) {
+			CompletableFuture<ResponseEntity<?>> result = operation.isJsonObject()
+					? getGraphQLResponse(operation.getAsJsonObject(), graphQL, documentProvider, true)
+					: CompletableFuture.completedFuture(logAndReturnError(HttpStatus.BAD_REQUEST,
+							"Batched operations must be JSON objects"));
+			results.add(result
+					.exceptionally(e -> logAndReturnError(HttpStatus.INTERNAL_SERVER_ERROR, e.getMessage()))
+					.thenApply(ResponseEntity::getBody));
+		}
+		return CompletableFuture.allOf(results.toArray(new CompletableFuture[0]))
+				.thenApply(v -> ResponseEntity.ok(results.stream().map(CompletableFuture::join).collect(Collectors.toList())));
 	}
 
 	@ResponseBody
-	private ResponseEntity<String> getGraphQLResponse(HttpEntity<String> httpEntity, GraphQL graphQL) {
+	private CompletableFuture<ResponseEntity<?>> getGraphQLResponse(HttpEntity<String> httpEntity, GraphQL graphQL,
+			BentoDocumentProvider documentProvider) {
 		// Get graphql query from request
 		String reqBody = httpEntity.getBody();
-		Gson gson = new Gson();
 		JsonObject jsonObject = gson.fromJson(reqBody, JsonObject.class);
+		return getGraphQLResponse(jsonObject, graphQL, documentProvider, false);
+	}
+
+	private CompletableFuture<ResponseEntity<?>> getGraphQLResponse(JsonObject jsonObject, GraphQL graphQL,
+			BentoDocumentProvider documentProvider, boolean batched) {
+		Gson gson = new Gson();
 		String query;
 		Map<String, Object> variables;
 		String operation;
 		try{
-			query = new String(jsonObject.get("query").getAsString().getBytes(), StandardCharsets.UTF_8);
+			JsonElement rawQuery = jsonObject.get("query");
+			query = rawQuery == null || rawQuery.isJsonNull() ? null :
+					new String(rawQuery.getAsString().getBytes(), StandardCharsets.UTF_8);
+			// Automatic Persisted Queries, the full query text is only sent when the hash is not registered yet
+			String persistedQueryHash = getPersistedQueryHash(jsonObject);
+			if (persistedQueryHash != null) {
+				if (!config.isPersistedQueriesEnabled()) {
+					return CompletableFuture.completedFuture(persistedQueryError(PERSISTED_QUERY_NOT_SUPPORTED));
+				}
+				query = documentProvider.resolvePersistedQuery(persistedQueryHash, query);
+				if (query == null) {
+					return CompletableFuture.completedFuture(persistedQueryError(PERSISTED_QUERY_NOT_FOUND));
+				}
+			}
+			if (query == null) {
+				throw new Exception("Request body does not contain a query");
+			}
 			JsonElement rawVar = jsonObject.get("variables");
 			variables = gson.fromJson(rawVar, Map.class);
             // Verify that all parameter inputs are less than 1000 values
@@ -128,37 +241,112 @@ public class GraphQLController {
                     throw new Exception(String.format("Maximum number of values exceeded for parameter %s. Provided: %d, Maximum: %d", key, numValues, maxValues));
                 }
             }
-            Parser parser = new Parser();
-			Document document = parser.parseDocument(query);
+			Document document = documentProvider.parseDocument(query);
 			OperationDefinition def = (OperationDefinition) document.getDefinitions().get(0);
 			operation = def.getOperation().toString().toLowerCase();
 		}
 		catch(Exception e){
-			return logAndReturnError(HttpStatus.BAD_REQUEST, e.getMessage());
+			return CompletableFuture.completedFuture(logAndReturnError(HttpStatus.BAD_REQUEST, e.getMessage()));
 		}
 
 		if ((operation.equals("query") && config.isAllowGraphQLQuery())
 				|| (operation.equals("mutation") && config.isAllowGraphQLMutation())) {
-			return ResponseEntity.ok(query(query, variables, graphQL));
+			return query(query, variables, graphQL, batched).thenApply(ResponseEntity::ok);
 		}
 		else if(operation.equals("query") || operation.equals("mutation")){
-			return logAndReturnError(HttpStatus.FORBIDDEN,
-					operation+" operations have been disabled in the application configuration.");
+			return CompletableFuture.completedFuture(logAndReturnError(HttpStatus.FORBIDDEN,
+					operation+" operations have been disabled in the application configuration."));
 		}
 		else {
-			return logAndReturnError(HttpStatus.BAD_REQUEST, operation+" operation type is not recognized.");
+			return CompletableFuture.completedFuture(logAndReturnError(HttpStatus.BAD_REQUEST,
+					operation+" operation type is not recognized."));
 		}
 	}
 
-	private String query(String sdl, Map<String, Object> variables, GraphQL graphQL) {
-		ExecutionInput.Builder builder = ExecutionInput.newExecutionInput().query(sdl);
+	private CompletableFuture<Map<String, Object>> query(String sdl, Map<String, Object> variables, GraphQL graphQL,
+			boolean batched) {
+		ExecutionInput.Builder builder = ExecutionInput.newExecutionInput().query(sdl)
+				.dataLoaderRegistry(bentoGraphQL.newDataLoaderRegistry(graphQL));
 		if (variables != null) {
 			builder = builder.variables(variables);
 		}
 		ExecutionInput input = builder.build();
-		ExecutionResult executionResult = graphQL.execute(input);
-		Map<String, Object> standardResult = executionResult.toSpecification();
-		return gson.toJson(standardResult);
+		// In async mode the servlet thread is released while data fetchers wait on Neo4j, Opensearch and Redis
+		CompletableFuture<ExecutionResult> executionResult;
+		if (config.isAsyncExecutionEnabled()) {
+			executionResult = graphQL.executeAsync(input);
+		} else if (batched) {
+			executionResult = CompletableFuture.supplyAsync(() -> graphQL.execute(input), bentoGraphQL.getExecutor());
+		} else {
+			executionResult = CompletableFuture.completedFuture(graphQL.execute(input));
+		}
+		return executionResult.thenApply(ExecutionResult::toSpecification);
+	}
+
+	private ResponseEntity<StreamingResponseBody> streamResponse(ResponseEntity<?> response, HttpHeaders requestHeaders) {
+		Object body = response.getBody();
+		String acceptEncoding = requestHeaders.getFirst(HttpHeaders.ACCEPT_ENCODING);
+		boolean gzip = config.isResponseGzipEnabled() && acceptEncoding != null && acceptEncoding.contains("gzip");
+		ResponseEntity.BodyBuilder builder = ResponseEntity.status(response.getStatusCode())
+				.contentType(new MediaType(MediaType.APPLICATION_JSON, StandardCharsets.UTF_8))
+				.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+		if (gzip) {
+			builder.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+		}
+		return builder.body(outputStream -> {
+			if (gzip) {
+				GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream);
+				writeJson(body, gzipOutputStream);
+				gzipOutputStream.finish();
+			} else {
+				writeJson(body, outputStream);
+			}
+		});
+	}
+
+	private void writeJson(Object body, OutputStream outputStream) throws IOException {
+		// Serialize the result map directly into the response instead of materialising the whole JSON string
+		Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+		JsonWriter jsonWriter = gson.newJsonWriter(writer);
+		if (body instanceof List) {
+			// Batched operations, one result per operation
+			jsonWriter.beginArray();
+			for (Object result: (List<?>) body) {
+				writeJsonValue(result, jsonWriter);
+			}
+			jsonWriter.endArray();
+		} else {
+			writeJsonValue(body, jsonWriter);
+		}
+		jsonWriter.flush();
+	}
+
+	private void writeJsonValue(Object value, JsonWriter jsonWriter) throws IOException {
+		// Error responses are already serialized
+		if (value instanceof String) {
+			jsonWriter.jsonValue((String) value);
+		} else {
+			gson.toJson(value, value.getClass(), jsonWriter);
+		}
+	}
+
+	private String getPersistedQueryHash(JsonObject jsonObject) {
+		JsonElement extensions = jsonObject.get("extensions");
+		if (extensions == null || !extensions.isJsonObject()) {
+			return null;
+		}
+		JsonElement persistedQuery = extensions.getAsJsonObject().get("persistedQuery");
+		if (persistedQuery == null || !persistedQuery.isJsonObject()) {
+			return null;
+		}
+		JsonElement hash = persistedQuery.getAsJsonObject().get("sha256Hash");
+		return hash == null || hash.isJsonNull() ? null : hash.getAsString();
+	}
+
+	private ResponseEntity<String> persistedQueryError(String error) {
+		// Apollo clients expect these errors with a 200 status, they resend the request with the full query text
+		logger.info(error);
+		return ResponseEntity.ok(gson.toJson(new BentoGraphqlError(List.of(error))));
 	}
 
 	private ResponseEntity logAndReturnError(HttpStatus status, BentoGraphQLException ex){
@@ -191,12 +379,15 @@ public class GraphQLController {
 
 		ResponseEntity<String> queryDataSourceVersion(){
 			try{
-				ResponseEntity<String> responseEntity = getGraphQLResponse(httpEntity,bentoGraphQL.getPublicGraphQL());
-				JsonObject jsonResponseBody = gson.fromJson(responseEntity.getBody(), JsonObject.class);
+				ResponseEntity<?> responseEntity = getGraphQLResponse(httpEntity, bentoGraphQL.getPublicGraphQL(),
+						bentoGraphQL.getPublicDocumentProvider()).join();
+				Object body = responseEntity.getBody();
+				String responseBody = body instanceof String ? (String) body : gson.toJson(body);
+				JsonObject jsonResponseBody = gson.fromJson(responseBody, JsonObject.class);
 				if (jsonResponseBody.has("errors")){
 					jsonResponseBody.getAsJsonArray("errors").forEach(x-> logger.error(x.getAsJsonObject()
 							.getAsJsonPrimitive("message").getAsString()));
-					return responseEntity;
+					return ResponseEntity.status(responseEntity.getStatusCode()).body(responseBody);
 				}
 				return ResponseEntity.ok(gson.toJson(Map.of("version", parseVersion(jsonResponseBody))));
 			}
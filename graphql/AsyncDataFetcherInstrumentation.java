@@ -0,0 +1,55 @@
+package gov.nih.nci.bento.graphql;
+
+import gov.nih.nci.bento.model.search.NonBlockingDataFetcher;
+import graphql.execution.ExecutionStepInfo;
+import graphql.execution.instrumentation.Instrumentation;
+import graphql.execution.instrumentation.InstrumentationState;
+import graphql.execution.instrumentation.parameters.InstrumentationFieldFetchParameters;
+import graphql.schema.DataFetcher;
+import graphql.schema.DataFetchingEnvironment;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+/**
+ * Dispatches every non-trivial data fetcher (Neo4j interceptor and YAML/Opensearch fetchers) to an executor so
+ * blocking calls to Neo4j, Opensearch and Redis no longer hold the servlet thread. Root fields that already return a future
+ * without blocking, through a DataLoader or the async Neo4j driver, are left on the execution thread.
+ */
+public class AsyncDataFetcherInstrumentation implements Instrumentation {
+
+    private final Executor executor;
+    private final Set<String> nonBlockingRootFields;
+
+    public AsyncDataFetcherInstrumentation(Executor executor, Set<String> nonBlockingRootFields) {
+        this.executor = executor;
+        this.nonBlockingRootFields = nonBlockingRootFields;
+    }
+
+    @Override
+    public DataFetcher<?> instrumentDataFetcher(DataFetcher<?> dataFetcher, InstrumentationFieldFetchParameters parameters,
+            InstrumentationState state) {
+        if (parameters.isTrivialDataFetcher() || dataFetcher instanceof NonBlockingDataFetcher) {
+            return dataFetcher;
+        }
+        ExecutionStepInfo stepInfo = parameters.getExecutionStepInfo();
+        if (stepInfo.getPath().getLevel() == 1 && nonBlockingRootFields.contains(stepInfo.getFieldDefinition().getName())) {
+            return dataFetcher;
+        }
+        return env -> CompletableFuture.supplyAsync(() -> fetch(dataFetcher, env), executor)
+                .thenCompose(value -> value instanceof CompletionStage
+                        ? ((CompletionStage<?>) value).toCompletableFuture()
+                        : CompletableFuture.completedFuture(value));
+    }
+
+    private Object fetch(DataFetcher<?> dataFetcher, DataFetchingEnvironment env) {
+        try {
+            return dataFetcher.get(env);
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package gov.nih.nci.bento.graphql;
+
+import gov.nih.nci.bento.utility.HashUtil;
+import graphql.ExecutionInput;
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.execution.preparsed.PreparsedDocumentProvider;
+import graphql.language.Document;
+import graphql.parser.Parser;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Caches parsed and validated GraphQL documents keyed by query text, and keeps the sha256 to query text mapping
+ * used by Automatic Persisted Queries. Validation depends on the schema, so each GraphQL instance gets its own
+ * provider.
+ */
+public class BentoDocumentProvider implements PreparsedDocumentProvider {
+    private static final Logger logger = LogManager.getLogger(BentoDocumentProvider.class);
+
+    private final Map<String, PreparsedDocumentEntry> documents;
+    private final Map<String, String> persistedQueries;
+
+    public BentoDocumentProvider(int maxSize) {
+        this.documents = createLruMap(maxSize);
+        this.persistedQueries = createLruMap(maxSize);
+    }
+
+    @Override
+    public CompletableFuture<PreparsedDocumentEntry> getDocumentAsync(ExecutionInput executionInput,
+            Function<ExecutionInput, PreparsedDocumentEntry> parseAndValidateFunction) {
+        return CompletableFuture.completedFuture(getDocument(executionInput, parseAndValidateFunction));
+    }
+
+    public PreparsedDocumentEntry getDocument(ExecutionInput executionInput,
+            Function<ExecutionInput, PreparsedDocumentEntry> parseAndValidateFunction) {
+        String query = executionInput.getQuery();
+        PreparsedDocumentEntry entry = documents.get(query);
+        if (entry == null) {
+            entry = parseAndValidateFunction.apply(executionInput);
+            documents.put(query, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the parsed document for a query, reusing the cached entry when the query has already been executed.
+     * Documents parsed here are not cached since they have not been validated yet.
+     */
+    public Document parseDocument(String query) {
+        PreparsedDocumentEntry entry = documents.get(query);
+        if (entry != null && !entry.hasErrors()) {
+            return entry.getDocument();
+        }
+        return new Parser().parseDocument(query);
+    }
+
+    /**
+     * Resolves the query text of an Automatic Persisted Query. When the client sends the full query along with its
+     * hash, the hash is verified and the query is registered; otherwise the previously registered query is returned.
+     *
+     * @return the query text, or null if the hash is not registered and no query was sent
+     */
+    public String resolvePersistedQuery(String sha256Hash, String query) {
+        if (query == null) {
+            return persistedQueries.get(sha256Hash);
+        }
+        if (!HashUtil.sha256Hex(query).equalsIgnoreCase(sha256Hash)) {
+            throw new IllegalArgumentException("Provided sha256 hash does not match the query");
+        }
+        persistedQueries.put(sha256Hash, query);
+        logger.info("Persisted query registered: " + sha256Hash);
+        return query;
+    }
+
+    private static <V> Map<String, V> createLruMap(int maxSize) {
+        return Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+}
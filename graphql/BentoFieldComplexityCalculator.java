@@ -0,0 +1,65 @@
+package gov.nih.nci.bento.graphql;
+
+import gov.nih.nci.bento.model.search.YamlDataFetcher;
+import graphql.analysis.FieldComplexityCalculator;
+import graphql.analysis.FieldComplexityEnvironment;
+import graphql.language.FieldDefinition;
+import graphql.schema.DataFetcher;
+import graphql.schema.FieldCoordinates;
+import graphql.schema.GraphQLCodeRegistry;
+import graphql.schema.GraphQLList;
+import graphql.schema.GraphQLType;
+import graphql.schema.GraphQLTypeUtil;
+
+/**
+ * Assigns a cost to every field of an operation before it is executed. Root fields backed by the YAML queries cost
+ * the number of Opensearch requests they send, other root fields and Neo4j fields resolved through a Cypher statement
+ * or a relationship cost the configured Neo4j field cost, and every other field costs 1. The fields selected under a
+ * list are counted once per requested item when the list is paginated with a first argument.
+ */
+public class BentoFieldComplexityCalculator implements FieldComplexityCalculator {
+    private static final String CYPHER_DIRECTIVE = "cypher";
+    private static final String RELATION_DIRECTIVE = "relation";
+    private static final String PAGE_SIZE_ARGUMENT = "first";
+
+    private final GraphQLCodeRegistry codeRegistry;
+    private final int neo4jFieldCost;
+
+    public BentoFieldComplexityCalculator(GraphQLCodeRegistry codeRegistry, int neo4jFieldCost) {
+        this.codeRegistry = codeRegistry;
+        this.neo4jFieldCost = neo4jFieldCost;
+    }
+
+    @Override
+    public int calculate(FieldComplexityEnvironment environment, int childComplexity) {
+        boolean isRootField = environment.getParentEnvironment() == null;
+        // The field itself is one request or statement, the fields selected under it are resolved for every item
+        long itemsComplexity = (long) childComplexity * getPageSize(environment);
+        int fieldCost;
+        DataFetcher<?> dataFetcher = isRootField ? codeRegistry.getDataFetcher(FieldCoordinates.coordinates(
+                environment.getParentType().getName(), environment.getField().getName()),
+                environment.getFieldDefinition()) : null;
+        if (dataFetcher instanceof YamlDataFetcher) {
+            fieldCost = ((YamlDataFetcher<?>) dataFetcher).getCost();
+        } else if (isRootField || isNeo4jField(environment.getFieldDefinition().getDefinition())) {
+            fieldCost = neo4jFieldCost;
+        } else {
+            fieldCost = 1;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, fieldCost + itemsComplexity);
+    }
+
+    private int getPageSize(FieldComplexityEnvironment environment) {
+        GraphQLType type = GraphQLTypeUtil.unwrapNonNull(environment.getFieldDefinition().getType());
+        Object pageSize = environment.getArguments().get(PAGE_SIZE_ARGUMENT);
+        if (!(type instanceof GraphQLList) || !(pageSize instanceof Number)) {
+            return 1;
+        }
+        return Math.max(1, ((Number) pageSize).intValue());
+    }
+
+    private boolean isNeo4jField(FieldDefinition definition) {
+        return definition != null
+                && (definition.hasDirective(CYPHER_DIRECTIVE) || definition.hasDirective(RELATION_DIRECTIVE));
+    }
+}
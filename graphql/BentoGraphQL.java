@@ -7,16 +7,25 @@ import gov.nih.nci.bento.model.AbstractPublicESDataFetcher;
 import gov.nih.nci.bento.model.ConfigurationDAO;
 import gov.nih.nci.bento.model.PrivateNeo4jDataFetcher;
 import gov.nih.nci.bento.model.PublicNeo4jDataFetcher;
+import gov.nih.nci.bento.model.search.MultipleRequestsBatchLoader;
+import gov.nih.nci.bento.service.ESService;
+import gov.nih.nci.bento.service.Neo4jService;
 import gov.nih.nci.bento.service.RedisService;
 import graphql.GraphQL;
+import graphql.analysis.MaxQueryComplexityInstrumentation;
+import graphql.analysis.MaxQueryDepthInstrumentation;
+import graphql.execution.instrumentation.ChainedInstrumentation;
+import graphql.execution.instrumentation.Instrumentation;
+import graphql.schema.GraphQLFieldDefinition;
 import graphql.schema.GraphQLNamedType;
 import graphql.schema.GraphQLObjectType;
 import graphql.schema.GraphQLSchema;
 import graphql.schema.idl.SchemaGenerator;
-import graphql.schema.idl.SchemaParser;
 import graphql.schema.idl.TypeDefinitionRegistry;
+import jakarta.annotation.PreDestroy;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.dataloader.DataLoaderRegistry;
 import org.neo4j.graphql.SchemaBuilder;
 import org.neo4j.graphql.SchemaConfig;
 import org.springframework.core.io.DefaultResourceLoader;
@@ -24,38 +33,79 @@ import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
 import org.springframework.stereotype.Component;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
 
 @Component
 public class BentoGraphQL {
 
     private static final Logger logger = LogManager.getLogger(BentoGraphQL.class);
 
+    private final ConfigurationDAO config;
+    private final ESService esService;
     private final GraphQL privateGraphQL;
     private final GraphQL publicGraphQL;
+    private final BentoDocumentProvider privateDocumentProvider;
+    private final BentoDocumentProvider publicDocumentProvider;
+    private final ExecutorService executor;
+    private final PublicNeo4jDataFetcher publicNeo4jDataFetcher;
+    private final PrivateNeo4jDataFetcher privateNeo4jDataFetcher;
+    private final TypeRegistryCache typeRegistryCache;
 
     public BentoGraphQL(
             ConfigurationDAO config,
             RedisService redisService,
+            Neo4jService neo4jService,
+            ESService esService,
             AbstractPrivateESDataFetcher privateESDataFetcher,
             AbstractPublicESDataFetcher publicESDataFetcher
     ) throws IOException {
-        PublicNeo4jDataFetcher publicNeo4JDataFetcher = new PublicNeo4jDataFetcher(config, redisService);
-        PrivateNeo4jDataFetcher privateNeo4jDataFetcher = new PrivateNeo4jDataFetcher(config, redisService);
+        this.config = config;
+        this.esService = esService;
+        this.executor = createExecutor();
+        this.publicNeo4jDataFetcher = new PublicNeo4jDataFetcher(config, redisService, neo4jService, executor);
+        this.privateNeo4jDataFetcher = new PrivateNeo4jDataFetcher(config, redisService, neo4jService, executor);
+        this.publicDocumentProvider = new BentoDocumentProvider(config.getDocumentCacheSize());
+        this.privateDocumentProvider = new BentoDocumentProvider(config.getDocumentCacheSize());
+        this.typeRegistryCache = new TypeRegistryCache(config.getSchemaCacheDir());
 
+        // The public and private schemas are independent, build them in parallel to shorten startup
+        CompletableFuture<GraphQL> publicBuild;
+        CompletableFuture<GraphQL> privateBuild;
         if (config.isEsFilterEnabled()){
-            this.publicGraphQL = buildGraphQLWithES(config.getPublicSchemaFile(),
-                    config.getPublicEsSchemaFile(), publicNeo4JDataFetcher, publicESDataFetcher);
-            this.privateGraphQL = buildGraphQLWithES(config.getSchemaFile(), config.getEsSchemaFile(),
-                    privateNeo4jDataFetcher, privateESDataFetcher);
+            publicBuild = buildAsync(() -> buildGraphQLWithES(config.getPublicSchemaFile(),
+                    config.getPublicEsSchemaFile(), publicNeo4jDataFetcher, publicESDataFetcher, publicDocumentProvider));
+            privateBuild = buildAsync(() -> buildGraphQLWithES(config.getSchemaFile(), config.getEsSchemaFile(),
+                    privateNeo4jDataFetcher, privateESDataFetcher, privateDocumentProvider));
         }
         else{
-            this.publicGraphQL = buildGraphQL(config.getPublicSchemaFile(), publicNeo4JDataFetcher);
-            this.privateGraphQL = buildGraphQL(config.getSchemaFile(), privateNeo4jDataFetcher);
+            publicBuild = buildAsync(() -> buildGraphQL(config.getPublicSchemaFile(), publicNeo4jDataFetcher,
+                    publicDocumentProvider));
+            privateBuild = buildAsync(() -> buildGraphQL(config.getSchemaFile(), privateNeo4jDataFetcher,
+                    privateDocumentProvider));
         }
+        this.publicGraphQL = awaitBuild(publicBuild);
+        this.privateGraphQL = awaitBuild(privateBuild);
+    }
+
+    @PreDestroy
+    private void close() {
+        executor.shutdown();
+        publicNeo4jDataFetcher.close();
+        privateNeo4jDataFetcher.close();
     }
 
     public GraphQL getPublicGraphQL() {
@@ -66,35 +116,140 @@ public class BentoGraphQL {
         return privateGraphQL;
     }
 
-    private GraphQL buildGraphQL(String neo4jSchemaFile, AbstractNeo4jDataFetcher neo4jDataFetcher) throws IOException {
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Creates the DataLoaders for a single execution of the given GraphQL instance, loads queued while an operation
+     * runs are sent together.
+     */
+    public DataLoaderRegistry newDataLoaderRegistry(GraphQL graphQL) {
+        AbstractNeo4jDataFetcher neo4jDataFetcher = graphQL == publicGraphQL ? publicNeo4jDataFetcher : privateNeo4jDataFetcher;
+        DataLoaderRegistry registry = new DataLoaderRegistry();
+        registry.register(MultipleRequestsBatchLoader.NAME, MultipleRequestsBatchLoader.newDataLoader(esService, executor));
+        registry.register(AbstractNeo4jDataFetcher.DATA_LOADER_NAME, neo4jDataFetcher.newDataLoader(executor));
+        return registry;
+    }
+
+    /**
+     * Cache write-behind queues of the public and private Neo4j fetchers, empty when cache writes are synchronous.
+     */
+    public Map<String, Object> getWriteBehindMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        if (publicNeo4jDataFetcher.getWriteBehindMetrics() != null) {
+            metrics.put("public", publicNeo4jDataFetcher.getWriteBehindMetrics());
+            metrics.put("private", privateNeo4jDataFetcher.getWriteBehindMetrics());
+        }
+        return metrics;
+    }
+
+    public BentoDocumentProvider getPublicDocumentProvider() {
+        return publicDocumentProvider;
+    }
+
+    public BentoDocumentProvider getPrivateDocumentProvider() {
+        return privateDocumentProvider;
+    }
+
+    private CompletableFuture<GraphQL> buildAsync(GraphQLBuild build) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return build.build();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    private GraphQL awaitBuild(CompletableFuture<GraphQL> build) throws IOException {
+        try {
+            return build.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private GraphQL buildGraphQL(String neo4jSchemaFile, AbstractNeo4jDataFetcher neo4jDataFetcher,
+            BentoDocumentProvider documentProvider) throws IOException {
         GraphQLSchema neo4jSchema = getNeo4jSchema(neo4jSchemaFile, neo4jDataFetcher);
-        return GraphQL.newGraphQL(neo4jSchema).build();
+        return newGraphQL(neo4jSchema, documentProvider, getNonBlockingRootFields(neo4jSchema));
     }
 
     private GraphQL buildGraphQLWithES(String neo4jSchemaFile, String esSchemaFile,
-            AbstractNeo4jDataFetcher privateNeo4JDataFetcher, AbstractESDataFetcher esBentoDataFetcher) throws IOException {
+            AbstractNeo4jDataFetcher privateNeo4JDataFetcher, AbstractESDataFetcher esBentoDataFetcher,
+            BentoDocumentProvider documentProvider) throws IOException {
         GraphQLSchema neo4jSchema = getNeo4jSchema(neo4jSchemaFile, privateNeo4JDataFetcher);
         GraphQLSchema esSchema = getEsSchema(esSchemaFile, esBentoDataFetcher);
         GraphQLSchema mergedSchema = mergeSchema(neo4jSchema, esSchema);
-        return GraphQL.newGraphQL(mergedSchema).build();
+        return newGraphQL(mergedSchema, documentProvider, getNonBlockingRootFields(neo4jSchema));
+    }
+
+    private GraphQL newGraphQL(GraphQLSchema schema, BentoDocumentProvider documentProvider,
+            Set<String> nonBlockingRootFields) {
+        List<Instrumentation> instrumentations = new ArrayList<>();
+        // Cost and depth limits are checked after validation, before any data fetcher runs
+        if (config.getMaxQueryDepth() > 0) {
+            instrumentations.add(new MaxQueryDepthInstrumentation(config.getMaxQueryDepth()));
+        }
+        if (config.getMaxQueryComplexity() > 0) {
+            instrumentations.add(new MaxQueryComplexityInstrumentation(config.getMaxQueryComplexity(),
+                    new BentoFieldComplexityCalculator(schema.getCodeRegistry(), config.getNeo4jFieldCost())));
+        }
+        if (config.isAsyncExecutionEnabled()) {
+            instrumentations.add(new AsyncDataFetcherInstrumentation(executor, nonBlockingRootFields));
+        }
+        GraphQL.Builder builder = GraphQL.newGraphQL(schema).preparsedDocumentProvider(documentProvider);
+        if (!instrumentations.isEmpty()) {
+            builder.instrumentation(new ChainedInstrumentation(instrumentations));
+        }
+        return builder.build();
+    }
+
+    private Set<String> getNonBlockingRootFields(GraphQLSchema neo4jSchema) {
+        // With batching or async Neo4j enabled the interceptor returns a future without waiting on Neo4j
+        if (!config.isNeo4jBatchingEnabled() && !config.isNeo4jAsyncEnabled()) {
+            return Set.of();
+        }
+        return neo4jSchema.getQueryType().getFieldDefinitions().stream()
+                .map(GraphQLFieldDefinition::getName)
+                .collect(Collectors.toSet());
+    }
+
+    private ExecutorService createExecutor() {
+        try {
+            // Looked up reflectively so the application still runs on JVMs without virtual threads
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            logger.warn("Virtual threads are not supported by this JVM, falling back to a cached thread pool");
+            return Executors.newCachedThreadPool();
+        }
     }
 
     private GraphQLSchema getNeo4jSchema(String schema, AbstractNeo4jDataFetcher dataFetcher) throws IOException {
-        ResourceLoader resourceLoader = new DefaultResourceLoader();
-        Resource resource = resourceLoader.getResource("classpath:" + schema);
-        File schemaFile = resource.getFile();
-        String schemaString = Files.readString(schemaFile.toPath());
+        String schemaString = readSchema(schema);
         SchemaConfig schemaConfig = new SchemaConfig();
         GraphQLSchema neo4jSchema = SchemaBuilder.buildSchema(schemaString, schemaConfig, dataFetcher);
         return neo4jSchema;
     }
 
     private GraphQLSchema getEsSchema(String esSchema, AbstractESDataFetcher bentoDataFetcher) throws IOException {
-        File schemaFile = new DefaultResourceLoader().getResource("classpath:" + esSchema).getFile();
-        TypeDefinitionRegistry schemaParser = new SchemaParser().parse(schemaFile);
+        TypeDefinitionRegistry schemaParser = typeRegistryCache.parse(readSchema(esSchema));
         return new SchemaGenerator().makeExecutableSchema(schemaParser, bentoDataFetcher.buildRuntimeWiring());
     }
 
+    private String readSchema(String schema) throws IOException {
+        // Read as a stream, Resource.getFile() fails when the schema is packaged inside a jar
+        ResourceLoader resourceLoader = new DefaultResourceLoader();
+        Resource resource = resourceLoader.getResource("classpath:" + schema);
+        try (InputStream inputStream = resource.getInputStream()) {
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
     private GraphQLSchema mergeSchema(GraphQLSchema schema1, GraphQLSchema schema2) {
         String QUERY_TYPE_NAME = "Query";
         String MUTATION_TYPE_NAME = "Mutation";
@@ -156,6 +311,11 @@ public class BentoGraphQL {
         return allTypes;
     }
 
+    @FunctionalInterface
+    private interface GraphQLBuild {
+        GraphQL build() throws IOException;
+    }
+
     private GraphQLNamedType mergeType(GraphQLObjectType type1, GraphQLObjectType type2) {
         if (type1 == null) {
             return type2;
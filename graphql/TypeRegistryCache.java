@@ -0,0 +1,71 @@
+package gov.nih.nci.bento.graphql;
+
+import gov.nih.nci.bento.utility.HashUtil;
+import graphql.GraphQL;
+import graphql.schema.idl.SchemaParser;
+import graphql.schema.idl.TypeDefinitionRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Parses SDL into a TypeDefinitionRegistry, optionally keeping the parsed registry on disk keyed by a hash of the SDL
+ * and the graphql-java version so replicas starting from the same schema files skip parsing. Only graphql-java and JDK
+ * value and collection classes are deserialized. Any cache failure falls back to parsing.
+ */
+public class TypeRegistryCache {
+    private static final Logger logger = LogManager.getLogger(TypeRegistryCache.class);
+    // graphql.** includes the collections graphql-java shades, everything else is rejected
+    private static final ObjectInputFilter FILTER = ObjectInputFilter.Config.createFilter(
+            "maxdepth=1000;graphql.**;java.lang.*;java.util.*;java.util.concurrent.*;java.math.*;!*");
+    // The serialized form changes with the library, an upgrade must not read entries written by the previous version
+    private static final String LIBRARY_VERSION = GraphQL.class.getPackage().getImplementationVersion() + "/"
+            + ObjectStreamClass.lookup(TypeDefinitionRegistry.class).getSerialVersionUID();
+
+    private final Path directory;
+
+    public TypeRegistryCache(String directory) {
+        this.directory = directory == null || directory.isBlank() ? null : Path.of(directory);
+    }
+
+    public TypeDefinitionRegistry parse(String sdl) {
+        if (directory == null) {
+            return new SchemaParser().parse(sdl);
+        }
+        Path file = directory.resolve(HashUtil.sha256Hex(LIBRARY_VERSION + "\n" + sdl) + ".registry");
+        if (Files.exists(file)) {
+            try (ObjectInputStream ois = new ObjectInputStream(Files.newInputStream(file))) {
+                ois.setObjectInputFilter(FILTER);
+                logger.info("Schema type registry loaded from cache: " + file);
+                return (TypeDefinitionRegistry) ois.readObject();
+            } catch (IOException | ClassNotFoundException | ClassCastException e) {
+                logger.warn("Schema type registry cache could not be read, parsing schema: " + e.getMessage());
+            }
+        }
+        TypeDefinitionRegistry registry = new SchemaParser().parse(sdl);
+        write(file, registry);
+        return registry;
+    }
+
+    private void write(Path file, TypeDefinitionRegistry registry) {
+        try {
+            Files.createDirectories(directory);
+            // Written to a temporary file first so concurrent replicas never read a partial entry
+            Path tempFile = Files.createTempFile(directory, "registry", ".tmp");
+            try (ObjectOutputStream oos = new ObjectOutputStream(Files.newOutputStream(tempFile))) {
+                oos.writeObject(registry);
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Schema type registry cache could not be written: " + e.getMessage());
+        }
+    }
+}
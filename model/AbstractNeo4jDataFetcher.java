@@ -1,6 +1,15 @@
 package gov.nih.nci.bento.model;
 
+import gov.nih.nci.bento.model.cache.BinaryCacheCodec;
+import gov.nih.nci.bento.model.cache.CacheCodec;
+import gov.nih.nci.bento.model.cache.CacheKeyBuilder;
+import gov.nih.nci.bento.model.cache.JavaSerializationCodec;
+import gov.nih.nci.bento.model.cache.LocalResultCache;
+import gov.nih.nci.bento.model.cache.SingleFlight;
+import gov.nih.nci.bento.model.cache.WriteBehindQueue;
+import gov.nih.nci.bento.service.Neo4jService;
 import gov.nih.nci.bento.service.RedisService;
+import graphql.language.OperationDefinition;
 import graphql.language.VariableReference;
 import graphql.schema.DataFetcher;
 import graphql.schema.DataFetchingEnvironment;
@@ -9,97 +18,568 @@ import graphql.schema.GraphQLNonNull;
 import graphql.schema.GraphQLType;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.dataloader.DataLoader;
+import org.dataloader.DataLoaderFactory;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.neo4j.driver.AuthTokens;
-import org.neo4j.driver.Driver;
-import org.neo4j.driver.GraphDatabase;
 import org.neo4j.driver.Record;
 import org.neo4j.driver.Result;
 import org.neo4j.driver.Session;
+import org.neo4j.driver.async.AsyncSession;
+import org.neo4j.driver.async.ResultCursor;
+import org.neo4j.driver.exceptions.Neo4jException;
 import org.neo4j.graphql.Cypher;
 import org.neo4j.graphql.DataFetchingInterceptor;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
-import java.util.Base64;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
 
-public abstract class AbstractNeo4jDataFetcher implements AutoCloseable, DataFetchingInterceptor {
+public abstract class AbstractNeo4jDataFetcher implements DataFetchingInterceptor {
+    public static final String DATA_LOADER_NAME = "neo4j";
     private static final Logger logger = LogManager.getLogger(AbstractNeo4jDataFetcher.class);
+    // Rows of a batch are variables inside the subquery, LIMIT and SKIP only accept constants and parameters
+    private static final Pattern PAGINATION_PARAMETER = Pattern.compile("(?i)\\b(?:LIMIT|SKIP)\\s+\\S*\\$");
+    private static final String BATCH_INDEX = "__index";
+    private static final String INVALIDATE_ALL = "*";
+    private static final String LOCK_SUFFIX = ":lock";
+    private static final String GENERATION_SUFFIX = ":generation";
+    private static final String INCREMENT_SCRIPT = "return redis.call('INCR', KEYS[1])";
+    private static final long LEASE_POLL_MILLIS = 50;
+    // Statements are generated from the schema so there are few of them, the bound only guards against literals
+    private static final int MAX_BATCHABLE_STATEMENTS = 10000;
 
-    private int cacheHits = 0;
-    private int cacheMisses = 0;
-
-    private Driver driver;
+    private final AtomicInteger cacheHits = new AtomicInteger();
+    private final AtomicInteger cacheMisses = new AtomicInteger();
 
     private final ConfigurationDAO config;
     private final RedisService redisService;
+    private final Neo4jService neo4jService;
+    private final CacheCodec cacheCodec;
+    private final CacheKeyBuilder cacheKeyBuilder;
+    private final LocalResultCache localCache;
+    private final WriteBehindQueue writeBehind;
+    private final String invalidationChannel;
+    private final String generationKey;
+    // Generation of the cache namespace shared through Redis, a mutation increments it so every cached result is dropped
+    private final AtomicLong generation = new AtomicLong();
+    private final SingleFlight singleFlight = new SingleFlight();
+    // Whether a statement can be sent as one UNWIND batch, learnt once per statement
+    private final Map<String, Boolean> batchable = new ConcurrentHashMap<>();
+    private final Executor executor;
 
-    protected AbstractNeo4jDataFetcher(ConfigurationDAO config, RedisService redisService) {
+    protected AbstractNeo4jDataFetcher(ConfigurationDAO config, RedisService redisService, Neo4jService neo4jService,
+                                       Executor executor) {
         this.config = config;
         this.redisService = redisService;
-        connect();
+        this.neo4jService = neo4jService;
+        this.executor = executor;
+        this.cacheCodec = createCacheCodec();
+        this.cacheKeyBuilder = new CacheKeyBuilder(config.getRedisCacheNamespace());
+        this.invalidationChannel = config.getRedisCacheNamespace() + ":invalidate";
+        this.generationKey = config.getRedisCacheNamespace() + GENERATION_SUFFIX;
+        this.localCache = config.isLocalCacheEnabled()
+                ? new LocalResultCache(config.getLocalCacheMaxBytes(), config.getLocalCacheTtlSeconds() * 1000L) : null;
+        if (redisService.isInitialized()) {
+            refreshGeneration();
+            redisService.subscribe(invalidationChannel, this::onInvalidation);
+        }
+        this.writeBehind = config.isRedisWriteBehindEnabled()
+                ? new WriteBehindQueue("cache-write-behind-" + getClass().getSimpleName(),
+                        config.getRedisWriteBehindCapacity(), config.getRedisWriteBehindBatchSize(), this::writeResults)
+                : null;
     }
 
-    private void connect() {
-        String uri = config.getNeo4jUrl();
-        String user = config.getNeo4jUser();
-        String password = config.getNeo4jPassword();
-        driver = GraphDatabase.driver(uri, AuthTokens.basic(user, password));
+    private CacheCodec createCacheCodec() {
+        // The binary codec still reads entries written by the java codec, switch back by setting redis.cache.codec=java
+        CacheCodec javaCodec = new JavaSerializationCodec();
+        if ("java".equalsIgnoreCase(config.getRedisCacheCodec())) {
+            return javaCodec;
+        }
+        return new BinaryCacheCodec(javaCodec);
     }
 
-    @Override
-    public void close() throws Exception {
-        driver.close();
+    /**
+     * Drops a cached result from the local cache of every replica. A null key drops every result, the generation of the
+     * namespace is incremented in Redis so the entries cached there are no longer read either, they expire with their
+     * TTL. The incremented generation is sent with the message, the replicas don't read it back from Redis.
+     */
+    public void invalidateCache(String key) {
+        String message = key;
+        if (key == null) {
+            message = INVALIDATE_ALL;
+            if (redisService.isInitialized()) {
+                Object incremented = redisService.eval(INCREMENT_SCRIPT, List.of(generationKey), List.of());
+                if (incremented instanceof Long) {
+                    message = INVALIDATE_ALL + incremented;
+                } else {
+                    logger.warn("Cache generation could not be incremented, Redis entries are left to expire");
+                }
+            }
+        }
+        onInvalidation(message);
+        if (redisService.isInitialized()) {
+            redisService.publish(invalidationChannel, message);
+        }
+    }
+
+    /**
+     * Writes the results still waiting in the write-behind queue and stops its thread.
+     */
+    public void close() {
+        if (writeBehind != null) {
+            writeBehind.close();
+        }
+    }
+
+    /**
+     * Queue depth and counters of the cache write-behind, or null when cache writes are synchronous.
+     */
+    public Map<String, Object> getWriteBehindMetrics() {
+        return writeBehind != null ? writeBehind.getMetrics() : null;
+    }
+
+    private void refreshGeneration() {
+        // Read from the primary, a replica can still return the value from before an increment
+        String current = redisService.getPrimaryValue(generationKey);
+        if (current != null) {
+            setGeneration(Long.parseLong(current));
+        }
+    }
+
+    private void setGeneration(long current) {
+        // Never moves back, an older message or read can arrive after a newer one
+        generation.accumulateAndGet(current, Math::max);
+    }
+
+    /**
+     * A message is either a cache key, or INVALIDATE_ALL followed by the incremented generation when Redis could
+     * increment it.
+     */
+    private void onInvalidation(String message) {
+        boolean all = message.startsWith(INVALIDATE_ALL);
+        if (all) {
+            String incremented = message.substring(INVALIDATE_ALL.length());
+            if (!incremented.isEmpty()) {
+                setGeneration(Long.parseLong(incremented));
+            } else if (redisService.isInitialized()) {
+                refreshGeneration();
+            }
+        }
+        if (writeBehind != null) {
+            writeBehind.discard(all ? null : message);
+        }
+        if (localCache == null) {
+            return;
+        }
+        if (all) {
+            localCache.invalidateAll();
+        } else {
+            localCache.invalidate(message);
+        }
+    }
+
+    /**
+     * Creates a DataLoader for a single execution. Queries of the same shape loaded by sibling fields of the operation
+     * are sent to Neo4j as one UNWIND statement, cached results are served from Redis without reaching Neo4j. Each
+     * operation of a batched request has its own DataLoader, so queries are not batched across operations.
+     */
+    public DataLoader<Neo4jQuery, Object> newDataLoader(Executor executor) {
+        return DataLoaderFactory.newDataLoader(queries -> CompletableFuture.supplyAsync(() -> loadAll(queries), executor));
     }
 
     @Nullable
     @Override
     public Object fetchData(@NotNull DataFetchingEnvironment dataFetchingEnvironment, @NotNull DataFetcher<Cypher> dataFetcher) throws Exception {
-        try (Session session = driver.session()) {
-            Cypher cypher = dataFetcher.get(dataFetchingEnvironment);
-            Map<String, Object> params = cypher.getParams();
-            Object values = null;
-            Map<String, Object> transformedParams = transformParams(params, dataFetchingEnvironment.getVariables());
+        Cypher cypher = dataFetcher.get(dataFetchingEnvironment);
+        Map<String, Object> params = cypher.getParams();
+        Map<String, Object> transformedParams = transformParams(params, dataFetchingEnvironment.getVariables());
+        Neo4jQuery query = new Neo4jQuery(cypher.getQuery(), transformedParams, isList(cypher.getType()),
+                cacheKeyBuilder.build(generation.get(), cypher.getVariable(), cypher.getQuery(), transformedParams));
 
-            if (redisService.isInitialized()) {
-                String redisKey = cypher.getVariable() + "::" + transformedParams;
-                String cachedValue = redisService.getCachedValue(redisKey);
-                values = deserializeObject(cachedValue);
-                if (values == null) {
-                    values = executeQuery(session, cypher, transformedParams);
-                    redisService.cacheValue(redisKey, serializeObject(values));
-                    logger.info("Cache Miss: Query executed and cache entry created");
-                    cacheMisses++;
-                }
-                else{
-                    logger.info("Cache Hit: Cached response retrieved");
-                    cacheHits++;
+        if (dataFetchingEnvironment.getOperationDefinition().getOperation() == OperationDefinition.Operation.MUTATION) {
+            // Mutation results are never cached, and the results cached before the change may now be stale
+            try (Session session = neo4jService.session()) {
+                return session.executeWrite(tx -> readResult(tx.run(query.getQuery(), query.getParams()), query.isList()),
+                        neo4jService.getTransactionConfig());
+            } finally {
+                invalidateCache(null);
+            }
+        }
+        DataLoader<Neo4jQuery, Object> dataLoader = config.isNeo4jBatchingEnabled()
+                ? dataFetchingEnvironment.getDataLoader(DATA_LOADER_NAME) : null;
+        if (dataLoader != null) {
+            return dataLoader.load(query);
+        }
+        if (config.isNeo4jAsyncEnabled()) {
+            return fetchDataAsync(query);
+        }
+        if (!redisService.isInitialized()) {
+            logger.info("Cache Disabled: Executing query");
+            try (Session session = neo4jService.session()) {
+                return executeQuery(session, query);
+            }
+        }
+        // Cache hits don't borrow a Neo4j connection, the session is only opened for a miss
+        Object values = getCachedResult(query);
+        if (values != null) {
+            return values;
+        }
+        return singleFlight.execute(query.getCacheKey(), () -> {
+            try (Session session = neo4jService.session()) {
+                return loadMiss(session, query);
+            }
+        });
+    }
+
+    private CompletionStage<Object> fetchDataAsync(Neo4jQuery query) {
+        if (!redisService.isInitialized()) {
+            logger.info("Cache Disabled: Executing query");
+            return executeQueryAsync(query);
+        }
+        // The Redis lookup and write block, they run on the application executor rather than the calling thread or
+        // the driver's I/O threads
+        return CompletableFuture.supplyAsync(() -> getCachedResult(query), executor)
+                .thenCompose(values -> values != null ? CompletableFuture.completedFuture(values)
+                        : singleFlight.executeAsync(query.getCacheKey(), () -> executeQueryAsync(query)
+                                .thenApplyAsync(result -> {
+                                    cacheResult(query, result);
+                                    return result;
+                                }, executor)));
+    }
+
+    private CompletionStage<Object> executeQueryAsync(Neo4jQuery query) {
+        AsyncSession session = neo4jService.asyncSession();
+        return session.executeReadAsync(tx -> tx.runAsync(query.getQuery(), query.getParams())
+                        .thenCompose(cursor -> readResultAsync(cursor, query.isList())),
+                neo4jService.getTransactionConfig())
+                .whenComplete((values, e) -> session.closeAsync());
+    }
+
+    private CompletionStage<Object> readResultAsync(ResultCursor cursor, boolean isList) {
+        String key = cursor.keys().get(0);
+        if (isList) {
+            return cursor.listAsync(rec -> rec.get(key).asObject()).thenApply(list -> (Object) list);
+        }
+        return cursor.nextAsync().thenApply(rec -> rec == null ? null : rec.get(key).asObject());
+    }
+
+    private Object loadMiss(Session session, Neo4jQuery query) {
+        if (!config.isRedisLeaseEnabled()) {
+            Object values = executeQuery(session, query);
+            cacheResult(query, values);
+            return values;
+        }
+        // The lease keeps other replicas from running the same query, they wait for the result to be cached instead
+        String lockKey = query.getCacheKey() + LOCK_SUFFIX;
+        String token = UUID.randomUUID().toString();
+        boolean locked = redisService.tryLock(lockKey, token, config.getRedisLeaseMillis());
+        try {
+            if (!locked) {
+                Object values = awaitCachedResult(query);
+                if (values != null) {
+                    return values;
                 }
-                int ratio = (int) ((double)cacheHits/(double)(cacheHits+cacheMisses)*100);
-                logger.info(String.format("Cache Hit-Miss Ratio: %s-%s, %s%%", cacheHits, cacheMisses, ratio));
+                logger.info("Lease expired before a result was cached: Executing query");
+            }
+            Object values = executeQuery(session, query);
+            // The waiting replicas poll Redis until the lease is released, the result is written before releasing it
+            cacheResult(query, values, locked);
+            return values;
+        } finally {
+            if (locked) {
+                redisService.unlock(lockKey, token);
+            }
+        }
+    }
+
+    private Object awaitCachedResult(Neo4jQuery query) {
+        long deadline = System.currentTimeMillis() + config.getRedisLeaseMillis();
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(LEASE_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            Object values = getCachedResult(query);
+            if (values != null) {
                 return values;
+            }
+        }
+        return null;
+    }
+
+    private List<Object> loadAll(List<Neo4jQuery> queries) {
+        Object[] results = redisService.isInitialized() ? getCachedResults(queries) : new Object[queries.size()];
+        // Group the cache misses by statement, queries with the same statement only differ by parameters
+        Map<String, List<Integer>> misses = new LinkedHashMap<>();
+        for (int i = 0; i < queries.size(); i++) {
+            if (results[i] == null) {
+                misses.computeIfAbsent(queries.get(i).getQuery(), k -> new ArrayList<>()).add(i);
+            }
+        }
+        List<Neo4jQuery> executed = new ArrayList<>();
+        List<Object> executedValues = new ArrayList<>();
+        try (Session session = neo4jService.session()) {
+            for (List<Integer> indexes : misses.values()) {
+                List<Neo4jQuery> group = new ArrayList<>();
+                indexes.forEach(i -> group.add(queries.get(i)));
+                List<Object> values;
+                if (group.size() == 1) {
+                    values = Collections.singletonList(executeQuery(session, group.get(0)));
+                } else if (!isBatchable(group.get(0).getQuery())) {
+                    values = executeEach(session, group);
+                } else {
+                    values = executeBatch(session, group);
+                }
+                for (int i = 0; i < indexes.size(); i++) {
+                    results[indexes.get(i)] = values.get(i);
+                }
+                executed.addAll(group);
+                executedValues.addAll(values);
+            }
+        }
+        if (redisService.isInitialized() && !executed.isEmpty()) {
+            cacheResults(executed, executedValues);
+        }
+        return Arrays.asList(results);
+    }
+
+    private boolean isBatchable(String query) {
+        Boolean known = batchable.get(query);
+        if (known != null) {
+            return known;
+        }
+        if (batchable.size() >= MAX_BATCHABLE_STATEMENTS) {
+            batchable.clear();
+        }
+        boolean result = !PAGINATION_PARAMETER.matcher(query).find();
+        batchable.put(query, result);
+        return result;
+    }
+
+    private List<Object> executeEach(Session session, List<Neo4jQuery> queries) {
+        List<Object> values = new ArrayList<>();
+        queries.forEach(q -> values.add(executeQuery(session, q)));
+        return values;
+    }
+
+    private List<Object> executeBatch(Session session, List<Neo4jQuery> queries) {
+        // Every parameter of the statement is read from its row of the batch inside a CALL subquery
+        String statement = "UNWIND range(0, size($__batch) - 1) AS " + BATCH_INDEX
+                + " CALL { WITH " + BATCH_INDEX + " WITH " + BATCH_INDEX + ", $__batch[" + BATCH_INDEX + "] AS __params "
+                + rewriteParameters(queries.get(0).getQuery())
+                + " } RETURN *";
+        List<Map<String, Object>> batch = new ArrayList<>();
+        queries.forEach(q -> batch.add(q.getParams()));
+        boolean isList = queries.get(0).isList();
+        try {
+            List<Object> values = session.executeRead(tx -> {
+                Result result = tx.run(statement, Map.of("__batch", batch));
+                String key = result.keys().stream().filter(k -> !k.equals(BATCH_INDEX)).findFirst().orElseThrow();
+                List<Object> rows = new ArrayList<>();
+                queries.forEach(q -> rows.add(isList ? new ArrayList<>() : null));
+                while (result.hasNext()) {
+                    Record rec = result.next();
+                    int index = rec.get(BATCH_INDEX).asInt();
+                    if (isList) {
+                        ((List<Object>) rows.get(index)).add(rec.get(key).asObject());
+                    } else if (rows.get(index) == null) {
+                        rows.set(index, rec.get(key).asObject());
+                    }
+                }
+                return rows;
+            }, neo4jService.getTransactionConfig());
+            logger.info(String.format("Batched %d Neo4j queries into a single statement", queries.size()));
+            return values;
+        } catch (Neo4jException | NoSuchElementException e) {
+            // Statements that can't be rewritten are executed one by one, now and for the following requests
+            logger.warn("Neo4j batch failed, executing queries individually: " + e.getMessage());
+            batchable.put(queries.get(0).getQuery(), false);
+            return executeEach(session, queries);
+        }
+    }
+
+    /**
+     * Replaces the parameters of a statement by the fields of the batch row. Quoted text, string literals and escaped
+     * names, is copied as it is, a $ inside it is not a parameter.
+     */
+    static String rewriteParameters(String query) {
+        StringBuilder statement = new StringBuilder(query.length() + 64);
+        char quote = 0;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (quote != 0) {
+                statement.append(c);
+                if (c == '\\' && quote != '`' && i + 1 < query.length()) {
+                    statement.append(query.charAt(++i));
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"' || c == '`') {
+                quote = c;
+                statement.append(c);
+            } else if (c == '$' && i + 1 < query.length()
+                    && (isWordChar(query.charAt(i + 1)) || query.charAt(i + 1) == '`')) {
+                statement.append("__params.");
             } else {
-                logger.info("Cache Disabled: Executing query");
-                return executeQuery(session, cypher, transformedParams);
+                statement.append(c);
             }
         }
+        return statement.toString();
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
     }
 
-    private Object executeQuery(Session session, Cypher cypher, Map<String, Object> variables){
-        Result result = session.run(cypher.getQuery(), variables);
+    private Object getCachedResult(Neo4jQuery query) {
+        return getCachedResults(List.of(query))[0];
+    }
+
+    /**
+     * Looks the queries up in the write-behind queue and the local cache, then fetches the remaining keys from Redis in
+     * a single round trip.
+     */
+    private Object[] getCachedResults(List<Neo4jQuery> queries) {
+        Object[] results = new Object[queries.size()];
+        List<Integer> remoteIndexes = new ArrayList<>();
+        List<String> remoteKeys = new ArrayList<>();
+        for (int i = 0; i < queries.size(); i++) {
+            String key = queries.get(i).getCacheKey();
+            results[i] = writeBehind != null ? writeBehind.get(key) : null;
+            if (results[i] == null && localCache != null) {
+                results[i] = localCache.get(key);
+            }
+            if (results[i] != null) {
+                logger.info("Cache Hit: Local response retrieved for " + key);
+                cacheHits.incrementAndGet();
+            } else {
+                remoteIndexes.add(i);
+                remoteKeys.add(key);
+            }
+        }
+        if (!remoteKeys.isEmpty()) {
+            List<byte[]> data = redisService.getCachedBytes(remoteKeys);
+            for (int i = 0; i < remoteKeys.size(); i++) {
+                Object values = decode(data.get(i));
+                if (values != null) {
+                    logger.info("Cache Hit: Cached response retrieved for " + remoteKeys.get(i));
+                    cacheHits.incrementAndGet();
+                    results[remoteIndexes.get(i)] = values;
+                    if (localCache != null) {
+                        localCache.put(remoteKeys.get(i), values, data.get(i).length);
+                    }
+                }
+            }
+        }
+        logCacheRatio();
+        return results;
+    }
+
+    private void cacheResult(Neo4jQuery query, Object values) {
+        cacheResult(query, values, false);
+    }
+
+    private void cacheResult(Neo4jQuery query, Object values, boolean writeThrough) {
+        cacheResults(List.of(query), Collections.singletonList(values), writeThrough);
+    }
+
+    private void cacheResults(List<Neo4jQuery> queries, List<Object> values) {
+        cacheResults(queries, values, false);
+    }
+
+    /**
+     * Caches the results of executed queries, through the write-behind queue when it is enabled and the write isn't
+     * required to be synchronous.
+     */
+    private void cacheResults(List<Neo4jQuery> queries, List<Object> values, boolean writeThrough) {
+        Map<String, Object> results = new LinkedHashMap<>();
+        for (int i = 0; i < queries.size(); i++) {
+            results.put(queries.get(i).getCacheKey(), values.get(i));
+            cacheMisses.incrementAndGet();
+        }
+        if (writeBehind != null && !writeThrough) {
+            results.forEach((key, value) -> {
+                if (!writeBehind.offer(key, value)) {
+                    logger.debug("Cache write-behind queue full, entry not cached: " + key);
+                }
+            });
+        } else {
+            writeResults(results, key -> true);
+        }
+        logCacheRatio();
+    }
+
+    /**
+     * Encodes the results and writes them to Redis in a single pipelined round trip. Results that are no longer current,
+     * i.e. invalidated while they were waiting to be written, are not stored.
+     *
+     * @return the number of results stored
+     */
+    private int writeResults(Map<String, Object> results, Predicate<String> current) {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        results.forEach((key, value) -> {
+            try {
+                entries.put(key, cacheCodec.encode(value));
+            } catch (IOException e) {
+                logger.error(e);
+            }
+        });
+        entries.keySet().removeIf(key -> !current.test(key));
+        if (entries.size() < results.size()) {
+            logger.debug((results.size() - entries.size()) + " results not cached, invalidated or not encodable");
+        }
+        if (entries.isEmpty()) {
+            return 0;
+        }
+        redisService.cacheBytes(entries);
+        if (localCache != null) {
+            entries.forEach((key, data) -> {
+                if (current.test(key)) {
+                    localCache.put(key, results.get(key), data.length);
+                }
+            });
+        }
+        entries.keySet().forEach(key -> logger.info("Cache Miss: Query executed and cache entry created for " + key));
+        return entries.size();
+    }
+
+    private void logCacheRatio() {
+        int hits = cacheHits.get();
+        int misses = cacheMisses.get();
+        int ratio = (int) ((double)hits/(double)(hits+misses)*100);
+        logger.info(String.format("Cache Hit-Miss Ratio: %s-%s, %s%%", hits, misses, ratio));
+    }
+
+    private Object executeQuery(Session session, Neo4jQuery query){
+        // Managed read transactions are routed to followers and read replicas and retried on transient errors
+        return session.executeRead(tx -> readResult(tx.run(query.getQuery(), query.getParams()), query.isList()),
+                neo4jService.getTransactionConfig());
+    }
+
+    private Object readResult(Result result, boolean isList) {
         String key = result.keys().get(0);
         Object values = null;
-        if (isList(cypher.getType())) {
+        if (isList) {
             List<Object> list = new ArrayList<>();
             values = list;
             while (result.hasNext()) {
@@ -115,26 +595,16 @@ public abstract class AbstractNeo4jDataFetcher implements AutoCloseable, DataFet
         return values;
     }
 
-    private String serializeObject(Object o) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ObjectOutputStream oos = new ObjectOutputStream( baos );
-        oos.writeObject( o );
-        oos.close();
-        return Base64.getEncoder().encodeToString(baos.toByteArray());
-    }
-
-    private Object deserializeObject(String s) throws IOException, ClassNotFoundException {
-        try{
-            byte[] data = Base64.getDecoder().decode(s);
-            ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data));
-            Object o = ois.readObject();
-            ois.close();
-            return o;
+    private Object decode(byte[] data) {
+        if (data == null) {
+            return null;
         }
-        catch (Exception e){
+        try {
+            return cacheCodec.decode(data);
+        } catch (IOException e) {
+            logger.warn("Unreadable cache entry, executing query: " + e.getMessage());
             return null;
         }
-
     }
 
     private Map<String, Object> transformParams(Map<String, Object> param, Map<String, Object> variables) {
@@ -35,6 +35,23 @@ public class ConfigurationDAO {
 	private String neo4jUser;
 	@Value("${neo4j.password}")
 	private String neo4jPassword;
+	//Neo4j Driver, durations in milliseconds, a transaction timeout of 0 uses the server default
+	@Value("${neo4j.pool.max_size:100}")
+	private int neo4jMaxConnectionPoolSize;
+	@Value("${neo4j.pool.acquisition_timeout_ms:60000}")
+	private long neo4jConnectionAcquisitionTimeout;
+	@Value("${neo4j.pool.max_lifetime_ms:3600000}")
+	private long neo4jMaxConnectionLifetime;
+	@Value("${neo4j.fetch_size:1000}")
+	private long neo4jFetchSize;
+	@Value("${neo4j.transaction.timeout_ms:0}")
+	private long neo4jTransactionTimeout;
+	//Run Neo4j queries on the async driver API instead of blocking a thread per query
+	@Value("${neo4j.async.enabled:false}")
+	private boolean neo4jAsyncEnabled;
+	//Batch queries of the same shape within an operation into one UNWIND statement through a DataLoader
+	@Value("${neo4j.batching.enabled:false}")
+	private boolean neo4jBatchingEnabled;
 
 	//Private GraphQL Schemas
 	@Value("${graphql.schema}")
@@ -48,12 +65,41 @@ public class ConfigurationDAO {
 	@Value("${graphql.public.es_schema}")
 	private String publicEsSchemaFile;
 
+	//Directory for cached parsed schemas, leave empty to disable
+	@Value("${graphql.schema_cache.dir:}")
+	private String schemaCacheDir;
+
 	//Operation Type Enable
 	@Value("${allow_graphql_query}")
 	private boolean allowGraphQLQuery;
 	@Value("${allow_graphql_mutation}")
 	private boolean allowGraphQLMutation;
 
+	//GraphQL Document Cache
+	@Value("${graphql.document_cache.size:1000}")
+	private int documentCacheSize;
+	@Value("${graphql.persisted_queries.enabled:true}")
+	private boolean persistedQueriesEnabled;
+
+	//Asynchronous Execution, data fetchers run on virtual threads
+	@Value("${graphql.async.enabled:false}")
+	private boolean asyncExecutionEnabled;
+	//Compress streamed GraphQL responses when the client accepts gzip
+	@Value("${graphql.response.gzip.enabled:true}")
+	private boolean responseGzipEnabled;
+	//Batched operations, maximum number of operations accepted in a single request
+	@Value("${graphql.batch.max_operations:20}")
+	private int maxBatchOperations;
+
+	//Query Cost Analysis, a limit of 0 disables the check. Both are off by default, measure the cost of the operations
+	//in use before enabling them
+	@Value("${graphql.max_query_complexity:0}")
+	private int maxQueryComplexity;
+	@Value("${graphql.max_query_depth:0}")
+	private int maxQueryDepth;
+	@Value("${graphql.neo4j_field_cost:5}")
+	private int neo4jFieldCost;
+
 	//Redis Cache Configuration
 	@Value("${redis.enable}")
 	private boolean redisEnabled;
@@ -65,6 +111,101 @@ public class ConfigurationDAO {
 	private int redisPort;
 	@Value("${redis.ttl}")
 	private int redisTTL;
+	//Redis Connection Pool, in cluster mode the limits apply to the pool of each node
+	@Value("${redis.pool.max_total:64}")
+	private int redisPoolMaxTotal;
+	@Value("${redis.pool.min_idle:4}")
+	private int redisPoolMinIdle;
+	@Value("${redis.pool.max_wait_ms:1000}")
+	private long redisPoolMaxWait;
+	@Value("${redis.timeout.connect_ms:2000}")
+	private int redisConnectTimeout;
+	@Value("${redis.timeout.socket_ms:2000}")
+	private int redisSocketTimeout;
+	@Value("${redis.health_check.interval_seconds:30}")
+	private int redisHealthCheckInterval;
+	//Where cache reads go: primary, replica_preferred or nearest. Cluster replicas are discovered, standalone
+	//replicas are listed as host:port,host:port
+	@Value("${redis.read_preference:primary}")
+	private String redisReadPreference;
+	@Value("${redis.replicas:}")
+	private String redisReplicas;
+	//Redis Circuit Breaker, rates are percentages of the last window_size calls, a rate above 100 never opens it
+	@Value("${redis.circuit_breaker.window_size:100}")
+	private int redisCircuitBreakerWindowSize;
+	@Value("${redis.circuit_breaker.minimum_calls:20}")
+	private int redisCircuitBreakerMinimumCalls;
+	@Value("${redis.circuit_breaker.failure_rate:50}")
+	private int redisCircuitBreakerFailureRate;
+	@Value("${redis.circuit_breaker.slow_call_rate:80}")
+	private int redisCircuitBreakerSlowCallRate;
+	@Value("${redis.circuit_breaker.slow_call_ms:250}")
+	private long redisCircuitBreakerSlowCallMillis;
+	@Value("${redis.circuit_breaker.open_ms:10000}")
+	private long redisCircuitBreakerOpenMillis;
+	@Value("${redis.circuit_breaker.half_open_calls:5}")
+	private int redisCircuitBreakerHalfOpenCalls;
+	//Number of members sent per SADD when caching large ID sets
+	@Value("${redis.sadd_chunk_size:1000}")
+	private int redisSaddChunkSize;
+	//Give every cached set its own hash slot, cross-slot unions and intersections then run client-side. Enable it for
+	//cluster deployments only, it renames every set key
+	@Value("${redis.set_sharding.enabled:false}")
+	private boolean redisSetShardingEnabled;
+	//Expiry of cached sets and bitmaps in seconds, 0 keeps them until evicted. Derived sets are unions and intersections
+	@Value("${redis.set_ttl.group_seconds:${redis.ttl}}")
+	private int redisGroupSetTtl;
+	@Value("${redis.set_ttl.derived_seconds:3600}")
+	private int redisDerivedSetTtl;
+	//Background sampling of the Redis keyspace for /redis-memory, an interval of 0 disables it
+	@Value("${redis.memory_report.interval_minutes:15}")
+	private int redisMemoryReportInterval;
+	@Value("${redis.memory_report.max_keys:10000}")
+	private int redisMemoryReportMaxKeys;
+	@Value("${redis.memory_report.largest_keys:20}")
+	private int redisMemoryReportLargestKeys;
+	//Prefix of the hashed Neo4j result keys, mutations invalidate every cached result by incrementing <namespace>:generation
+	@Value("${redis.cache.namespace:neo4j}")
+	private String redisCacheNamespace;
+	//In-process cache in front of Redis, invalidated across replicas through Redis pub/sub
+	@Value("${redis.local_cache.enabled:true}")
+	private boolean localCacheEnabled;
+	@Value("${redis.local_cache.max_bytes:67108864}")
+	private long localCacheMaxBytes;
+	@Value("${redis.local_cache.ttl_seconds:60}")
+	private int localCacheTtlSeconds;
+	//Keep the group sets of RedisService as bitmaps over an ID dictionary, the groups hold IDs of id_namespace
+	@Value("${redis.group_bitmaps.enabled:false}")
+	private boolean groupBitmapsEnabled;
+	@Value("${redis.group_bitmaps.id_namespace:default}")
+	private String groupBitmapsIdNamespace;
+	//IDs of a dictionary kept in process, the mapping is read from Redis again once they are dropped
+	@Value("${redis.group_bitmaps.dictionary_cache_max_ids:1000000}")
+	private int groupBitmapsDictionaryCacheMaxIds;
+	//In-process cache of group ID bitmaps
+	@Value("${redis.bitmap_cache.max_bytes:67108864}")
+	private long bitmapCacheMaxBytes;
+	//Lease lock so only one replica runs the query for a missing cache entry
+	@Value("${redis.lease.enabled:false}")
+	private boolean redisLeaseEnabled;
+	@Value("${redis.lease.ttl_ms:10000}")
+	private long redisLeaseMillis;
+	//Values of at least this many bytes are compressed before they are written to Redis, -1 disables compression
+	@Value("${redis.compression.threshold_bytes:8192}")
+	private int redisCompressionThreshold;
+	//Key prefixes reported separately in the compression metrics, other keys are reported together
+	@Value("${redis.compression.stats_namespaces:${redis.cache.namespace:neo4j},bitmap}")
+	private String redisCompressionStatsNamespaces;
+	//Cached Neo4j result format, binary or java
+	@Value("${redis.cache.codec:binary}")
+	private String redisCacheCodec;
+	//Cache writes are queued and written by a background thread, a full queue drops writes instead of delaying requests
+	@Value("${redis.write_behind.enabled:true}")
+	private boolean redisWriteBehindEnabled;
+	@Value("${redis.write_behind.capacity:10000}")
+	private int redisWriteBehindCapacity;
+	@Value("${redis.write_behind.batch_size:100}")
+	private int redisWriteBehindBatchSize;
 
 	//Elasticsearch Configuration
 	@Value("${es.host}")
@@ -86,4 +227,14 @@ public class ConfigurationDAO {
 	//Testing
 	@Value("${test.queries_file}")
 	private String testQueriesFile;
+
+	//Startup Warm-up, replays test.queries_file before the application reports ready
+	@Value("${warmup.enabled:false}")
+	private boolean warmUpEnabled;
+	@Value("${warmup.timeout_seconds:120}")
+	private int warmUpTimeoutSeconds;
+	@Value("${warmup.iterations:3}")
+	private int warmUpIterations;
+	@Value("${warmup.neo4j_connections:10}")
+	private int warmUpNeo4jConnections;
 }
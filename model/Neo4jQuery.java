@@ -0,0 +1,22 @@
+package gov.nih.nci.bento.model;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * A generated Cypher statement with its resolved parameters, used as the DataLoader key for batched Neo4j queries.
+ * Equal queries within one operation are only executed once.
+ */
+@Getter
+@RequiredArgsConstructor
+@EqualsAndHashCode
+public class Neo4jQuery {
+    private final String query;
+    private final Map<String, Object> params;
+    private final boolean list;
+    @EqualsAndHashCode.Exclude
+    private final String cacheKey;
+}
@@ -1,9 +1,13 @@
 package gov.nih.nci.bento.model;
 
+import gov.nih.nci.bento.service.Neo4jService;
 import gov.nih.nci.bento.service.RedisService;
 
+import java.util.concurrent.Executor;
+
 public class PrivateNeo4jDataFetcher extends AbstractNeo4jDataFetcher{
-    public PrivateNeo4jDataFetcher(ConfigurationDAO config, RedisService redisService) {
-        super(config, redisService);
+    public PrivateNeo4jDataFetcher(ConfigurationDAO config, RedisService redisService, Neo4jService neo4jService,
+                                   Executor executor) {
+        super(config, redisService, neo4jService, executor);
     }
 }
@@ -1,10 +1,14 @@
 package gov.nih.nci.bento.model;
 
+import gov.nih.nci.bento.service.Neo4jService;
 import gov.nih.nci.bento.service.RedisService;
 
+import java.util.concurrent.Executor;
+
 public class PublicNeo4jDataFetcher extends AbstractNeo4jDataFetcher{
-    public PublicNeo4jDataFetcher(ConfigurationDAO config, RedisService redisService) {
-        super(config, redisService);
+    public PublicNeo4jDataFetcher(ConfigurationDAO config, RedisService redisService, Neo4jService neo4jService,
+                                  Executor executor) {
+        super(config, redisService, neo4jService, executor);
     }
 }
 
@@ -0,0 +1,264 @@
+package gov.nih.nci.bento.model.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compact binary format for cached Neo4j results. An entry starts with a magic byte, a format version and a flags byte,
+ * followed by the tagged value tree. Map keys are written once and referenced by index afterwards, so the property
+ * names repeated on every row of a result are only stored once. Entries that don't start with the magic byte are
+ * handed to the legacy codec, so both formats can be read during a rollout.
+ */
+public class BinaryCacheCodec implements CacheCodec {
+    static final int MAGIC = 0xB7;
+    static final int VERSION = 1;
+    static final int FLAG_DEFLATE = 1;
+
+    private static final int NULL = 0;
+    private static final int TRUE = 1;
+    private static final int FALSE = 2;
+    private static final int INT = 3;
+    private static final int LONG = 4;
+    private static final int DOUBLE = 5;
+    private static final int STRING = 6;
+    private static final int LIST = 7;
+    private static final int MAP = 8;
+    private static final int BYTES = 9;
+    private static final int SERIALIZED = 10;
+
+    private final CacheCodec legacyCodec;
+
+    public BinaryCacheCodec(CacheCodec legacyCodec) {
+        this.legacyCodec = legacyCodec;
+    }
+
+    @Override
+    public byte[] encode(Object value) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        baos.write(MAGIC);
+        baos.write(VERSION);
+        // Large values are compressed by RedisService, the deflate flag is only read for entries written before that
+        baos.write(0);
+        try (DataOutputStream out = new DataOutputStream(baos)) {
+            writeValue(out, value, new HashMap<>());
+        }
+        return baos.toByteArray();
+    }
+
+    @Override
+    public Object decode(byte[] data) throws IOException {
+        if (data.length == 0 || (data[0] & 0xFF) != MAGIC) {
+            return legacyCodec.decode(data);
+        }
+        if (data.length < 3 || data[1] != VERSION) {
+            throw new IOException("Unsupported cache entry version " + (data.length > 1 ? data[1] : -1));
+        }
+        InputStream payload = new ByteArrayInputStream(data, 3, data.length - 3);
+        if ((data[2] & FLAG_DEFLATE) != 0) {
+            // Inflated up front so the lengths read below can be checked against the remaining bytes
+            try (InputStream inflater = new InflaterInputStream(payload)) {
+                payload = new ByteArrayInputStream(inflater.readAllBytes());
+            }
+        }
+        try (DataInputStream in = new DataInputStream(payload)) {
+            return readValue(in, new ArrayList<>());
+        }
+    }
+
+    private void writeValue(DataOutputStream out, Object value, Map<String, Integer> keys) throws IOException {
+        if (value == null) {
+            out.write(NULL);
+        } else if (value instanceof Boolean) {
+            out.write((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Integer) {
+            out.write(INT);
+            writeVarLong(out, zigZag((Integer) value));
+        } else if (value instanceof Long) {
+            out.write(LONG);
+            writeVarLong(out, zigZag((Long) value));
+        } else if (value instanceof Double) {
+            out.write(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof String) {
+            out.write(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            out.write(LIST);
+            writeVarLong(out, list.size());
+            for (Object item : list) {
+                writeValue(out, item, keys);
+            }
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.write(MAP);
+            writeVarLong(out, map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeKey(out, String.valueOf(entry.getKey()), keys);
+                writeValue(out, entry.getValue(), keys);
+            }
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            out.write(BYTES);
+            writeVarLong(out, bytes.length);
+            out.write(bytes);
+        } else if (value instanceof Serializable) {
+            // Temporal and spatial values are rare in results, they keep Java serialization
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+                oos.writeObject(value);
+            }
+            out.write(SERIALIZED);
+            writeVarLong(out, baos.size());
+            baos.writeTo(out);
+        } else {
+            throw new IOException("Unsupported cache value type " + value.getClass().getName());
+        }
+    }
+
+    private Object readValue(DataInputStream in, List<String> keys) throws IOException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case TRUE:
+                return true;
+            case FALSE:
+                return false;
+            case INT:
+                return (int) unZigZag(readVarLong(in));
+            case LONG:
+                return unZigZag(readVarLong(in));
+            case DOUBLE:
+                return in.readDouble();
+            case STRING:
+                return readString(in);
+            case LIST: {
+                int size = readLength(in);
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in, keys));
+                }
+                return list;
+            }
+            case MAP: {
+                int size = readLength(in);
+                Map<String, Object> map = new LinkedHashMap<>();
+                for (int i = 0; i < size; i++) {
+                    String key = readKey(in, keys);
+                    map.put(key, readValue(in, keys));
+                }
+                return map;
+            }
+            case BYTES: {
+                byte[] bytes = new byte[readLength(in)];
+                in.readFully(bytes);
+                return bytes;
+            }
+            case SERIALIZED: {
+                byte[] bytes = new byte[readLength(in)];
+                in.readFully(bytes);
+                try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                    ois.setObjectInputFilter(JavaSerializationCodec.FILTER);
+                    return ois.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new IOException(e);
+                }
+            }
+            default:
+                throw new IOException("Invalid cache value tag " + tag);
+        }
+    }
+
+    private void writeKey(DataOutputStream out, String key, Map<String, Integer> keys) throws IOException {
+        // 0 introduces a new key, any other value refers to a key already written
+        Integer index = keys.get(key);
+        if (index != null) {
+            writeVarLong(out, index + 1);
+        } else {
+            keys.put(key, keys.size());
+            writeVarLong(out, 0);
+            writeString(out, key);
+        }
+    }
+
+    private String readKey(DataInputStream in, List<String> keys) throws IOException {
+        long ref = readVarLong(in);
+        if (ref == 0) {
+            String key = readString(in);
+            keys.add(key);
+            return key;
+        }
+        if (ref < 0 || ref > keys.size()) {
+            throw new IOException("Invalid cache key reference " + ref);
+        }
+        return keys.get((int) ref - 1);
+    }
+
+    private void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readLength(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a byte count or an element count. Every byte, element or entry takes at least one byte of the input, so a
+     * length above the remaining bytes is corrupt and is rejected before anything is allocated for it.
+     */
+    private int readLength(DataInputStream in) throws IOException {
+        long length = readVarLong(in);
+        // The input is always backed by a byte array, available() is the exact number of remaining bytes
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Invalid cache entry length " + length);
+        }
+        return (int) length;
+    }
+
+    private void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length number");
+    }
+
+    private long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,13 @@
+package gov.nih.nci.bento.model.cache;
+
+import java.io.IOException;
+
+/**
+ * Converts the Map/List/primitive trees returned by Neo4j to the bytes stored in Redis and back.
+ */
+public interface CacheCodec {
+
+    byte[] encode(Object value) throws IOException;
+
+    Object decode(byte[] data) throws IOException;
+}
@@ -0,0 +1,75 @@
+package gov.nih.nci.bento.model.cache;
+
+import gov.nih.nci.bento.utility.HashUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Builds fixed length Redis keys for Neo4j results. The Cypher statement and a canonical form of its parameters are
+ * hashed together, so equivalent requests share a key however their parameter maps are ordered. List order is kept,
+ * statements can index or return lists in order, except for the values of _in filters which are sets.
+ */
+public class CacheKeyBuilder {
+    private final String namespace;
+
+    public CacheKeyBuilder(String namespace) {
+        this.namespace = namespace;
+    }
+
+    /**
+     * Returns a key of the form namespace:generation:variable:sha256, the variable keeps keys readable in logs and
+     * Redis scans. Bumping the generation of the namespace makes every earlier key unreachable.
+     */
+    public String build(long generation, String variable, String query, Map<String, Object> params) {
+        StringBuilder canonical = new StringBuilder(query).append('\n');
+        appendCanonical(canonical, params, false);
+        return namespace + ":" + generation + ":" + variable + ":" + HashUtil.sha256Hex(canonical.toString());
+    }
+
+    static void appendCanonical(StringBuilder sb, Object value, boolean unordered) {
+        if (value instanceof Map) {
+            Map<String, Object> sorted = new TreeMap<>();
+            ((Map<?, ?>) value).forEach((k, v) -> sorted.put(String.valueOf(k), v));
+            sb.append('{');
+            sorted.forEach((k, v) -> {
+                appendString(sb, k);
+                sb.append(':');
+                appendCanonical(sb, v, isSetFilter(k));
+                sb.append(',');
+            });
+            sb.append('}');
+        } else if (value instanceof List) {
+            List<String> items = new ArrayList<>();
+            boolean scalars = true;
+            for (Object item : (List<?>) value) {
+                scalars &= !(item instanceof Map || item instanceof List);
+                StringBuilder itemSb = new StringBuilder();
+                appendCanonical(itemSb, item, false);
+                items.add(itemSb.toString());
+            }
+            if (unordered && scalars) {
+                items.sort(null);
+            }
+            sb.append('[').append(String.join(",", items)).append(']');
+        } else if (value instanceof String) {
+            appendString(sb, (String) value);
+        } else if (value instanceof Byte || value instanceof Short || value instanceof Integer || value instanceof Long) {
+            sb.append(((Number) value).longValue());
+        } else if (value instanceof Float || value instanceof Double) {
+            sb.append(((Number) value).doubleValue());
+        } else {
+            sb.append(value);
+        }
+    }
+
+    private static boolean isSetFilter(String key) {
+        return key.endsWith("_in") || key.endsWith("_IN");
+    }
+
+    private static void appendString(StringBuilder sb, String value) {
+        sb.append('"').append(value.replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+    }
+}
@@ -0,0 +1,39 @@
+package gov.nih.nci.bento.model.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Base64;
+
+/**
+ * The original cache format, Java serialization encoded as Base64 text. Kept to read entries written before the binary
+ * codec was rolled out and to allow switching back.
+ */
+public class JavaSerializationCodec implements CacheCodec {
+    // Cache entries can be written by anyone with access to Redis, only the types Neo4j results are made of are read
+    static final ObjectInputFilter FILTER = ObjectInputFilter.Config.createFilter(
+            "maxdepth=100;maxrefs=1000000;java.lang.*;java.util.*;java.math.*;java.time.*;gov.nih.nci.bento.model.**;"
+                    + "!*");
+
+    @Override
+    public byte[] encode(Object value) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject(value);
+        }
+        return Base64.getEncoder().encode(baos.toByteArray());
+    }
+
+    @Override
+    public Object decode(byte[] data) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(data)))) {
+            ois.setObjectInputFilter(FILTER);
+            return ois.readObject();
+        } catch (ClassNotFoundException | IllegalArgumentException e) {
+            throw new IOException("Invalid serialized cache entry", e);
+        }
+    }
+}
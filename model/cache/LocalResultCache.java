@@ -0,0 +1,119 @@
+package gov.nih.nci.bento.model.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-heap cache of decoded Neo4j results in front of Redis. Entries are weighed by their encoded size and the least
+ * recently used entries are evicted once the total weight exceeds the limit. Entries also expire after their own TTL,
+ * which bounds how stale a replica can be if an invalidation message is missed.
+ * <p>
+ * Keys are spread over independently locked segments, each with its share of the weight limit, so concurrent hits on
+ * different keys rarely wait for each other. Recency is tracked per segment, and an entry heavier than the share of
+ * its segment is not cached.
+ */
+public class LocalResultCache {
+    private static final int MAX_SEGMENTS = 16;
+    // Smaller caches get fewer segments, so the share of a segment stays large enough for big results
+    private static final long MIN_SEGMENT_WEIGHT = 1L << 20;
+
+    private final long ttlMillis;
+    private final Segment[] segments;
+
+    public LocalResultCache(long maxWeight, long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+        int count = Integer.highestOneBit((int) Math.min(MAX_SEGMENTS, Math.max(1, maxWeight / MIN_SEGMENT_WEIGHT)));
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(maxWeight / count);
+        }
+    }
+
+    public Object get(String key) {
+        return segment(key).get(key);
+    }
+
+    public void put(String key, Object value, int entryWeight) {
+        if (value == null) {
+            return;
+        }
+        segment(key).put(key, new Entry(value, entryWeight, System.currentTimeMillis() + ttlMillis));
+    }
+
+    public void invalidate(String key) {
+        segment(key).remove(key);
+    }
+
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    private Segment segment(String key) {
+        int hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+    }
+
+    private static class Segment {
+        private final long maxWeight;
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long weight;
+
+        private Segment(long maxWeight) {
+            this.maxWeight = maxWeight;
+        }
+
+        private synchronized Object get(String key) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt < System.currentTimeMillis()) {
+                remove(key);
+                return null;
+            }
+            return entry.value;
+        }
+
+        private synchronized void put(String key, Entry entry) {
+            // A single entry larger than the whole segment would only evict everything else
+            if (entry.weight > maxWeight) {
+                return;
+            }
+            remove(key);
+            entries.put(key, entry);
+            weight += entry.weight;
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while (weight > maxWeight && eldest.hasNext()) {
+                weight -= eldest.next().getValue().weight;
+                eldest.remove();
+            }
+        }
+
+        private synchronized void remove(String key) {
+            Entry entry = entries.remove(key);
+            if (entry != null) {
+                weight -= entry.weight;
+            }
+        }
+
+        private synchronized void clear() {
+            entries.clear();
+            weight = 0;
+        }
+    }
+
+    private static class Entry {
+        private final Object value;
+        private final int weight;
+        private final long expiresAt;
+
+        private Entry(Object value, int weight, long expiresAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
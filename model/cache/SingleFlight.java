@@ -0,0 +1,69 @@
+package gov.nih.nci.bento.model.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent loads of the same key, the first caller runs the loader and every caller arriving while it runs
+ * waits for its result instead of running the loader again.
+ */
+public class SingleFlight {
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    public Object execute(String key, Supplier<Object> loader) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw e;
+            }
+        }
+        try {
+            Object value = loader.get();
+            future.complete(value);
+            return value;
+        } catch (Throwable e) {
+            // Errors too, waiters would otherwise block on the future forever
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * Asynchronous variant of {@link #execute}, callers share the future of the load already in flight.
+     */
+    public CompletableFuture<Object> executeAsync(String key, Supplier<CompletionStage<Object>> loader) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            loader.get().whenComplete((value, e) -> {
+                inFlight.remove(key, future);
+                if (e != null) {
+                    future.completeExceptionally(e);
+                } else {
+                    future.complete(value);
+                }
+            });
+        } catch (Throwable e) {
+            inFlight.remove(key, future);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+}
@@ -0,0 +1,184 @@
+package gov.nih.nci.bento.model.cache;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Bounded write-behind queue for cache entries. Entries are handed to the writer in batches by a background thread, so
+ * requests don't wait for serialisation and the Redis round trip. A key queued again before it is written only keeps
+ * its latest value, and once the queue is full new entries are dropped instead of making callers wait. Queued values
+ * can be read back until they are written. Entries still queued when the queue is closed are written before the
+ * writer thread stops.
+ */
+public class WriteBehindQueue {
+    private static final Logger logger = LogManager.getLogger(WriteBehindQueue.class);
+    private static final long CLOSE_TIMEOUT_MILLIS = 10000;
+
+    private final int capacity;
+    private final int batchSize;
+    private final Writer writer;
+    private final Thread thread;
+    private final LinkedHashMap<String, Object> pending = new LinkedHashMap<>();
+    private Map<String, Object> writing = Map.of();
+    // Incremented when every entry is discarded, a batch taken by the writer before that is no longer stored
+    private long generation;
+    private boolean closed;
+    private int maxDepth;
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    public WriteBehindQueue(String name, int capacity, int batchSize, Writer writer) {
+        this.capacity = Math.max(1, capacity);
+        this.batchSize = Math.max(1, batchSize);
+        this.writer = writer;
+        this.thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return false if the entry was dropped because the queue is full or closed
+     */
+    public synchronized boolean offer(String key, Object value) {
+        if (closed) {
+            dropped.increment();
+            return false;
+        }
+        if (pending.containsKey(key)) {
+            pending.put(key, value);
+            coalesced.increment();
+            return true;
+        }
+        if (pending.size() >= capacity) {
+            dropped.increment();
+            return false;
+        }
+        pending.put(key, value);
+        queued.increment();
+        maxDepth = Math.max(maxDepth, pending.size());
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * @return the value queued or being written for the key, or null
+     */
+    public synchronized Object get(String key) {
+        Object value = pending.get(key);
+        return value != null ? value : writing.get(key);
+    }
+
+    /**
+     * Drops a queued entry so it can no longer be read back, a null key drops every entry.
+     */
+    public synchronized void discard(String key) {
+        if (key == null) {
+            generation++;
+            pending.clear();
+            writing = Map.of();
+        } else {
+            pending.remove(key);
+            if (writing.containsKey(key)) {
+                // The batch being written is still iterated by the writer, it is replaced rather than changed
+                Map<String, Object> remaining = new HashMap<>(writing);
+                remaining.remove(key);
+                writing = remaining;
+            }
+        }
+    }
+
+    /**
+     * Writes the entries still queued and stops the writer thread, later entries are dropped.
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            thread.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            logger.warn("Cache write-behind queue not drained within " + CLOSE_TIMEOUT_MILLIS + " ms");
+            thread.interrupt();
+        }
+    }
+
+    public synchronized Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("depth", pending.size());
+        metrics.put("maxDepth", maxDepth);
+        metrics.put("capacity", capacity);
+        metrics.put("queued", queued.sum());
+        metrics.put("coalesced", coalesced.sum());
+        metrics.put("dropped", dropped.sum());
+        metrics.put("written", written.sum());
+        metrics.put("skipped", skipped.sum());
+        metrics.put("failed", failed.sum());
+        return metrics;
+    }
+
+    private void run() {
+        while (true) {
+            Map<String, Object> batch = new LinkedHashMap<>();
+            long batchGeneration;
+            synchronized (this) {
+                try {
+                    while (pending.isEmpty() && !closed) {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (pending.isEmpty()) {
+                    return;
+                }
+                Iterator<Map.Entry<String, Object>> entries = pending.entrySet().iterator();
+                while (entries.hasNext() && batch.size() < batchSize) {
+                    Map.Entry<String, Object> entry = entries.next();
+                    batch.put(entry.getKey(), entry.getValue());
+                    entries.remove();
+                }
+                writing = batch;
+                batchGeneration = generation;
+            }
+            try {
+                int stored = writer.write(batch, key -> isCurrent(batchGeneration, key));
+                written.add(stored);
+                skipped.add(batch.size() - stored);
+            } catch (RuntimeException e) {
+                failed.add(batch.size());
+                logger.error("Cache write-behind batch failed", e);
+            } finally {
+                synchronized (this) {
+                    writing = Map.of();
+                }
+            }
+        }
+    }
+
+    private synchronized boolean isCurrent(long batchGeneration, String key) {
+        return generation == batchGeneration && writing.containsKey(key);
+    }
+
+    public interface Writer {
+        /**
+         * @param current false for a key discarded after the batch was taken, its entry must then not be stored
+         * @return the number of entries stored
+         */
+        int write(Map<String, Object> batch, Predicate<String> current);
+    }
+}
@@ -0,0 +1,49 @@
+package gov.nih.nci.bento.model.search;
+
+import gov.nih.nci.bento.service.ESService;
+import org.dataloader.BatchLoader;
+import org.dataloader.DataLoader;
+import org.dataloader.DataLoaderFactory;
+import org.dataloader.DataLoaderOptions;
+import org.dataloader.Try;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+/**
+ * Coalesces the Opensearch requests of every YAML field in an operation into a single msearch. A failed search only
+ * fails the field it belongs to.
+ */
+public class MultipleRequestsBatchLoader implements BatchLoader<List<MultipleRequests>, Try<Map<String, Object>>> {
+    public static final String NAME = "multipleRequests";
+
+    private final ESService esService;
+    private final Executor executor;
+
+    public MultipleRequestsBatchLoader(ESService esService, Executor executor) {
+        this.esService = esService;
+        this.executor = executor;
+    }
+
+    public static DataLoader<List<MultipleRequests>, Map<String, Object>> newDataLoader(ESService esService, Executor executor) {
+        // Every field sends its own requests, caching by key would never hit
+        return DataLoaderFactory.newDataLoaderWithTry(new MultipleRequestsBatchLoader(esService, executor),
+                DataLoaderOptions.newOptions().setCachingEnabled(false));
+    }
+
+    @Override
+    public CompletionStage<List<Try<Map<String, Object>>>> load(List<List<MultipleRequests>> keys) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return esService.elasticMultiSendBatch(keys);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+}
@@ -0,0 +1,11 @@
+package gov.nih.nci.bento.model.search;
+
+import graphql.schema.DataFetcher;
+
+/**
+ * Marks data fetchers that only queue work in a DataLoader and return a future. They must run on the execution
+ * thread so their loads are queued before the DataLoaders are dispatched.
+ */
+@FunctionalInterface
+public interface NonBlockingDataFetcher<T> extends DataFetcher<T> {
+}
@@ -0,0 +1,26 @@
+package gov.nih.nci.bento.model.search;
+
+import graphql.schema.DataFetchingEnvironment;
+
+/**
+ * Data fetcher of a root field backed by a YAML query. It carries the cost of the field for the query complexity
+ * analysis, the number of Opensearch requests it sends unless the YAML query sets its own cost.
+ */
+public class YamlDataFetcher<T> implements NonBlockingDataFetcher<T> {
+    private final NonBlockingDataFetcher<T> dataFetcher;
+    private final int cost;
+
+    public YamlDataFetcher(int cost, NonBlockingDataFetcher<T> dataFetcher) {
+        this.cost = cost;
+        this.dataFetcher = dataFetcher;
+    }
+
+    @Override
+    public T get(DataFetchingEnvironment environment) throws Exception {
+        return dataFetcher.get(environment);
+    }
+
+    public int getCost() {
+        return cost;
+    }
+}
@@ -11,4 +11,6 @@ public class YamlQuery {
     private YamlFilter filter;
 //    private YamlDynamicFilter dynamicFilter;
     private YamlHighlight highlight;
+    // Relative cost used by the query complexity analysis, one Opensearch request by default
+    private int cost = 1;
 }
@@ -1,14 +1,22 @@
 package gov.nih.nci.bento.model.search.yaml.type;
 
 import gov.nih.nci.bento.constants.Const;
+import gov.nih.nci.bento.model.search.MultipleRequests;
+import gov.nih.nci.bento.model.search.MultipleRequestsBatchLoader;
 import gov.nih.nci.bento.model.search.query.QueryParam;
+import gov.nih.nci.bento.model.search.yaml.GroupTypeQuery;
 import gov.nih.nci.bento.model.search.yaml.IFilterType;
 import gov.nih.nci.bento.model.search.yaml.ITypeQuery;
+import gov.nih.nci.bento.model.search.yaml.filter.YamlQuery;
 import graphql.schema.DataFetcher;
+import gov.nih.nci.bento.service.ESService;
 import graphql.schema.DataFetchingEnvironment;
+import org.dataloader.DataLoader;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public abstract class AbstractYamlType {
 
@@ -21,6 +29,21 @@ public abstract class AbstractYamlType {
                 .build();
     }
 
+    // Requests of every YAML field in the operation are sent in one msearch when the batch loader is registered
+    protected <T> CompletableFuture<Map<String, T>> sendRequests(DataFetchingEnvironment env, ESService esService,
+            List<MultipleRequests> requests) throws IOException {
+        DataLoader<List<MultipleRequests>, Map<String, T>> loader = env.getDataLoader(MultipleRequestsBatchLoader.NAME);
+        if (loader == null) {
+            return CompletableFuture.completedFuture(esService.elasticMultiSend(requests));
+        }
+        return loader.load(requests);
+    }
+
+    // Every return field of a group is sent as a separate request in the same msearch
+    protected int getGroupCost(GroupTypeQuery.Group group) {
+        return group.getReturnFields().stream().mapToInt(YamlQuery::getCost).sum();
+    }
+
     protected String getYamlFileName(Const.ES_ACCESS_TYPE accessType, String fileName) {
         return accessType.equals(Const.ES_ACCESS_TYPE.PUBLIC) ? "public_" + fileName : fileName;
     }
@@ -3,6 +3,7 @@ package gov.nih.nci.bento.model.search.yaml.type;
 
 import gov.nih.nci.bento.constants.Const;
 import gov.nih.nci.bento.model.search.MultipleRequests;
+import gov.nih.nci.bento.model.search.YamlDataFetcher;
 import gov.nih.nci.bento.model.search.query.QueryParam;
 import gov.nih.nci.bento.model.search.yaml.GroupTypeQuery;
 import gov.nih.nci.bento.model.search.yaml.IFilterType;
@@ -22,6 +23,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 @RequiredArgsConstructor
 public class GlobalTypeYaml extends AbstractYamlType {
 
@@ -36,7 +38,7 @@ public class GlobalTypeYaml extends AbstractYamlType {
         return groupTypeQuery.getQueries();
     }
 
-    private <T> Object multipleSend(GroupTypeQuery.Group group, QueryParam param, ITypeQuery iTypeQuery, IFilterType iFilterType) throws IOException {
+    private CompletableFuture<Map<String, Object>> multipleSend(DataFetchingEnvironment env, GroupTypeQuery.Group group, QueryParam param, ITypeQuery iTypeQuery, IFilterType iFilterType) throws IOException {
         logger.info(String.format("%s global Yaml search API requested: %s", accessType.toString(), group.getName()));
         List<MultipleRequests> requests = new ArrayList<>();
         group.getReturnFields().forEach(q->
@@ -47,9 +49,11 @@ public class GlobalTypeYaml extends AbstractYamlType {
                                 .source(iFilterType.getQueryFilter(param, q)))
                         .typeMapper(iTypeQuery.getReturnType(param, q)).build()));
 
-        Map<String, Object> result = esService.elasticMultiSend(requests);
-        checkEmptySearch(result, param);
-        return result;
+        CompletableFuture<Map<String, Object>> result = sendRequests(env, esService, requests);
+        return result.thenApply(r -> {
+            checkEmptySearch(r, param);
+            return r;
+        });
     }
 
     @Override
@@ -59,7 +63,7 @@ public class GlobalTypeYaml extends AbstractYamlType {
         if (!resource.exists()) return;
         readYamlFile(resource).forEach(group->{
             String queryName = group.getName();
-            resultMap.put(queryName, (DataFetchingEnvironment env) -> multipleSend(group, createQueryParam(env), iTypeQuery, iFilterType));
+            resultMap.put(queryName, new YamlDataFetcher<>(getGroupCost(group), env -> multipleSend(env, group, createQueryParam(env), iTypeQuery, iFilterType)));
         });
     }
 
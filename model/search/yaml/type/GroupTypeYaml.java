@@ -2,12 +2,14 @@ package gov.nih.nci.bento.model.search.yaml.type;
 
 import gov.nih.nci.bento.constants.Const;
 import gov.nih.nci.bento.model.search.MultipleRequests;
+import gov.nih.nci.bento.model.search.YamlDataFetcher;
 import gov.nih.nci.bento.model.search.query.QueryParam;
 import gov.nih.nci.bento.model.search.yaml.GroupTypeQuery;
 import gov.nih.nci.bento.model.search.yaml.IFilterType;
 import gov.nih.nci.bento.model.search.yaml.ITypeQuery;
 import gov.nih.nci.bento.service.ESService;
 import graphql.schema.DataFetcher;
+import graphql.schema.DataFetchingEnvironment;
 import lombok.RequiredArgsConstructor;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -18,6 +20,7 @@ import org.yaml.snakeyaml.constructor.Constructor;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 @RequiredArgsConstructor
 public class GroupTypeYaml extends AbstractYamlType {
@@ -46,7 +49,7 @@ public class GroupTypeYaml extends AbstractYamlType {
         return groupTypeQuery.getQueries();
     }
 
-    private <T> Map<String, T> multipleSend(GroupTypeQuery.Group group, QueryParam param, ITypeQuery iTypeQuery, IFilterType iFilterType) throws IOException {
+    private <T> CompletableFuture<Map<String, T>> multipleSend(DataFetchingEnvironment env, GroupTypeQuery.Group group, QueryParam param, ITypeQuery iTypeQuery, IFilterType iFilterType) throws IOException {
         logger.info(String.format("%s group Yaml search API requested: %s", accessType.toString(), group.getName()));
         List<MultipleRequests> requests = new ArrayList<>();
         group.getReturnFields().forEach(q->
@@ -56,7 +59,7 @@ public class GroupTypeYaml extends AbstractYamlType {
                         .indices(q.getIndex())
                         .source(iFilterType.getQueryFilter(param, q)))
                 .typeMapper(iTypeQuery.getReturnType(param, q)).build()));
-        return esService.elasticMultiSend(requests);
+        return sendRequests(env, esService, requests);
     }
 
     @Override
@@ -66,7 +69,7 @@ public class GroupTypeYaml extends AbstractYamlType {
         if (!resource.exists()) return;
         readYamlFile(resource).forEach(group->{
             String queryName = group.getName();
-            resultMap.put(queryName, env -> multipleSend(group, createQueryParam(env), iTypeQuery, iFilterType));
+            resultMap.put(queryName, new YamlDataFetcher<>(getGroupCost(group), env -> multipleSend(env, group, createQueryParam(env), iTypeQuery, iFilterType)));
         });
     }
 }
@@ -2,14 +2,15 @@ package gov.nih.nci.bento.model.search.yaml.type;
 
 import gov.nih.nci.bento.constants.Const;
 import gov.nih.nci.bento.model.search.MultipleRequests;
+import gov.nih.nci.bento.model.search.YamlDataFetcher;
 import gov.nih.nci.bento.model.search.query.QueryParam;
-import gov.nih.nci.bento.model.search.query.QueryResult;
 import gov.nih.nci.bento.model.search.yaml.IFilterType;
 import gov.nih.nci.bento.model.search.yaml.ITypeQuery;
 import gov.nih.nci.bento.model.search.yaml.SingleTypeQuery;
 import gov.nih.nci.bento.model.search.yaml.filter.YamlQuery;
 import gov.nih.nci.bento.service.ESService;
 import graphql.schema.DataFetcher;
+import graphql.schema.DataFetchingEnvironment;
 import lombok.RequiredArgsConstructor;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -21,6 +22,7 @@ import org.yaml.snakeyaml.constructor.Constructor;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 @RequiredArgsConstructor
 public class SingleTypeYaml extends AbstractYamlType {
 
@@ -35,16 +37,16 @@ public class SingleTypeYaml extends AbstractYamlType {
         return singleTypeQuery.getQueries();
     }
 
-    private Object multipleSend(YamlQuery query, QueryParam param, ITypeQuery iTypeQuery, IFilterType iFilterType) throws IOException {
+    private CompletableFuture<Object> multipleSend(DataFetchingEnvironment env, YamlQuery query, QueryParam param, ITypeQuery iTypeQuery, IFilterType iFilterType) throws IOException {
         logger.info(String.format("%s single Yaml search API requested: %s", accessType.toString(), query.getName()));
-        Map<String, QueryResult> multipleSendResult = esService.elasticMultiSend(
+        CompletableFuture<Map<String, Object>> multipleSendResult = sendRequests(env, esService,
                 List.of(MultipleRequests.builder()
                         .name(query.getName())
                         .request(new SearchRequest()
                         .indices(query.getIndex())
                         .source(iFilterType.getQueryFilter(param, query)))
                         .typeMapper(iTypeQuery.getReturnType(param, query)).build()));
-        return multipleSendResult.get(query.getName());
+        return multipleSendResult.thenApply(result -> result.get(query.getName()));
     }
 
     @Override
@@ -53,7 +55,7 @@ public class SingleTypeYaml extends AbstractYamlType {
         ClassPathResource resource = new ClassPathResource(fileName);
         if (!resource.exists()) return;
         readYamlFile(resource).forEach(query->
-                resultMap.put(query.getName(), env -> multipleSend(query, createQueryParam(env), iTypeQuery, iFilterType))
+                resultMap.put(query.getName(), new YamlDataFetcher<>(query.getCost(), env -> multipleSend(env, query, createQueryParam(env), iTypeQuery, iFilterType)))
         );
     }
 }
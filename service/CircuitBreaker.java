@@ -0,0 +1,197 @@
+package gov.nih.nci.bento.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Count based circuit breaker. The outcome of the last calls is kept in a sliding window, once enough calls have been
+ * recorded and the rate of failed or slow calls reaches its threshold the circuit opens and calls are rejected without
+ * being attempted. After the open duration a limited number of probe calls are let through, the circuit closes again
+ * if they all succeed and reopens otherwise.
+ * <p>
+ * The breaker is consulted on every Redis call and takes no lock. The window is a ring of atomic slots with running
+ * counts, so under contention the rates are approximate for the calls being recorded at that moment. A call is only
+ * recorded against the state of the circuit it was permitted in, calls that complete after the circuit changed state
+ * are ignored.
+ */
+public class CircuitBreaker {
+    private static final int FAILED = 1;
+    private static final int SLOW = 2;
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final int slowCallRateThreshold;
+    private final long slowCallNanos;
+    private final long openMillis;
+    private final int halfOpenCalls;
+
+    // Each slot holds the FAILED and SLOW bits of one call, the counts are kept in step with the slots
+    private final AtomicIntegerArray outcomes;
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicInteger slowCalls = new AtomicInteger();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicReference<Phase> phase = new AtomicReference<>(new Phase(State.CLOSED, 0));
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder opened = new LongAdder();
+
+    public CircuitBreaker(int windowSize, int minimumCalls, int failureRateThreshold, int slowCallRateThreshold,
+            long slowCallMillis, long openMillis, int halfOpenCalls) {
+        this.windowSize = Math.max(1, windowSize);
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, this.windowSize));
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallNanos = slowCallMillis * 1_000_000L;
+        this.openMillis = openMillis;
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+        this.outcomes = new AtomicIntegerArray(this.windowSize);
+    }
+
+    /**
+     * Returns a permit if a call may be attempted, every permitted call must be followed by {@link #record}.
+     *
+     * @return the permit, or null if the call is rejected
+     */
+    public Permit tryAcquire() {
+        while (true) {
+            Phase current = phase.get();
+            if (current.state == State.CLOSED) {
+                return current.permit;
+            }
+            if (current.state == State.OPEN) {
+                if (System.currentTimeMillis() < current.openUntil) {
+                    rejected.increment();
+                    return null;
+                }
+                phase.compareAndSet(current, new Phase(State.HALF_OPEN, 0));
+                continue;
+            }
+            if (current.probesStarted.incrementAndGet() > halfOpenCalls) {
+                rejected.increment();
+                return null;
+            }
+            return current.permit;
+        }
+    }
+
+    public void record(Permit permit, long durationNanos, boolean failed) {
+        record(permit, durationNanos, failed, 1);
+    }
+
+    /**
+     * Records a call made of several pipelined commands, it only counts as slow when it took longer than the slow call
+     * duration for each of them, so large batch writes don't open the circuit for every other call.
+     */
+    public void record(Permit permit, long durationNanos, boolean failed, int commands) {
+        Phase admitted = permit.phase;
+        if (phase.get() != admitted) {
+            // Permitted before the circuit changed state, the outcome says nothing about the current one
+            return;
+        }
+        boolean slow = durationNanos >= slowCallNanos * Math.max(1, commands);
+        if (admitted.state == State.HALF_OPEN) {
+            if (failed || slow) {
+                open(admitted);
+            } else if (admitted.probesSucceeded.incrementAndGet() >= halfOpenCalls
+                    && phase.compareAndSet(admitted, new Phase(State.CLOSED, 0))) {
+                clearWindow();
+            }
+            return;
+        }
+        int outcome = (failed ? FAILED : 0) | (slow ? SLOW : 0);
+        int slot = (int) (calls.getAndIncrement() % windowSize);
+        int previous = outcomes.getAndSet(slot, outcome);
+        int failureCount = failures.addAndGet((outcome & FAILED) - (previous & FAILED));
+        int slowCount = slowCalls.addAndGet(((outcome & SLOW) - (previous & SLOW)) / SLOW);
+        int recorded = recorded();
+        if (recorded >= minimumCalls && (rate(failureCount, recorded) >= failureRateThreshold
+                || rate(slowCount, recorded) >= slowCallRateThreshold)) {
+            open(admitted);
+        }
+    }
+
+    public State getState() {
+        return phase.get().state;
+    }
+
+    public Map<String, Object> getMetrics() {
+        State state = getState();
+        int recorded = recorded();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("state", state.name());
+        metrics.put("failureRate", state == State.CLOSED ? rate(failures.get(), recorded) : null);
+        metrics.put("slowCallRate", state == State.CLOSED ? rate(slowCalls.get(), recorded) : null);
+        metrics.put("bufferedCalls", recorded);
+        metrics.put("rejectedCalls", rejected.sum());
+        metrics.put("timesOpened", opened.sum());
+        return metrics;
+    }
+
+    private void open(Phase expected) {
+        if (phase.compareAndSet(expected, new Phase(State.OPEN, System.currentTimeMillis() + openMillis))) {
+            opened.increment();
+            if (expected.state == State.CLOSED) {
+                clearWindow();
+            }
+        }
+    }
+
+    private void clearWindow() {
+        calls.set(0);
+        for (int i = 0; i < windowSize; i++) {
+            int previous = outcomes.getAndSet(i, 0);
+            failures.addAndGet(-(previous & FAILED));
+            slowCalls.addAndGet(-((previous & SLOW) / SLOW));
+        }
+    }
+
+    private int recorded() {
+        return (int) Math.min(calls.get(), windowSize);
+    }
+
+    private int rate(int count, int recorded) {
+        if (recorded == 0) {
+            return 0;
+        }
+        return Math.min(100, Math.max(0, count) * 100 / recorded);
+    }
+
+    /**
+     * Permission for one call, tied to the state of the circuit it was given in.
+     */
+    public static final class Permit {
+        private final Phase phase;
+
+        private Permit(Phase phase) {
+            this.phase = phase;
+        }
+    }
+
+    /**
+     * A state of the circuit, replaced as a whole on every transition. Calls permitted while closed share the permit of
+     * the phase, so acquiring one allocates nothing.
+     */
+    private static final class Phase {
+        private final State state;
+        private final long openUntil;
+        private final AtomicInteger probesStarted = new AtomicInteger();
+        private final AtomicInteger probesSucceeded = new AtomicInteger();
+        private final Permit permit = new Permit(this);
+
+        private Phase(State state, long openUntil) {
+            this.state = state;
+            this.openUntil = openUntil;
+        }
+    }
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+}
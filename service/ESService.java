@@ -9,6 +9,7 @@ import gov.nih.nci.bento.service.connector.DefaultClient;
 import org.apache.http.util.EntityUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.dataloader.Try;
 import org.jetbrains.annotations.NotNull;
 import org.opensearch.OpenSearchException;
 import org.opensearch.action.search.MultiSearchRequest;
@@ -58,12 +59,32 @@ public class ESService {
     }
 
     public <T> Map<String, T> elasticMultiSend(@NotNull List<MultipleRequests> requests) throws IOException {
+        return getMultiResponse(multiSearch(requests), requests);
+    }
+
+    // Sends the requests of several GraphQL fields in a single msearch, results are returned per field in order and a
+    // field with a failed search gets its own failure without failing the other fields
+    public <T> List<Try<Map<String, T>>> elasticMultiSendBatch(@NotNull List<List<MultipleRequests>> batches) throws IOException {
+        List<MultipleRequests> requests = new ArrayList<>();
+        batches.forEach(requests::addAll);
+        MultiSearchResponse.Item[] response = multiSearch(requests);
+        List<Try<Map<String, T>>> result = new ArrayList<>();
+        int offset = 0;
+        for (List<MultipleRequests> batch : batches) {
+            MultiSearchResponse.Item[] items = Arrays.copyOfRange(response, offset, offset + batch.size());
+            result.add(Try.tryCall(() -> getMultiResponse(items, batch)));
+            offset += batch.size();
+        }
+        return result;
+    }
+
+    private MultiSearchResponse.Item[] multiSearch(List<MultipleRequests> requests) throws IOException {
         try {
             MultiSearchRequest multiRequests = new MultiSearchRequest();
             requests.forEach(r->multiRequests.add(r.getRequest()));
 
             MultiSearchResponse response = restHighLevelClient.msearch(multiRequests, RequestOptions.DEFAULT);
-            return getMultiResponse(response.getResponses(), requests);
+            return response.getResponses();
         }
         catch (IOException | OpenSearchException e) {
             logger.error(e.toString());
@@ -71,14 +92,17 @@ public class ESService {
         }
     }
 
-    private <T> Map<String, T> getMultiResponse(MultiSearchResponse.Item[] response, List<MultipleRequests> requests) {
+    private <T> Map<String, T> getMultiResponse(MultiSearchResponse.Item[] response, List<MultipleRequests> requests) throws IOException {
         Map<String, T> result = new HashMap<>();
-        final int[] index = {0};
-        List.of(response).forEach(item->{
-            MultipleRequests req = requests.get(index[0]);
-            result.put(req.getName(), (T) req.getTypeMapper().get(item.getResponse()));
-            index[0] += 1;
-        });
+        for (int i = 0; i < response.length; i++) {
+            MultipleRequests req = requests.get(i);
+            if (response[i].isFailure()) {
+                String msg = "Opensearch request " + req.getName() + " failed: " + response[i].getFailureMessage();
+                logger.error(msg);
+                throw new IOException(msg);
+            }
+            result.put(req.getName(), (T) req.getTypeMapper().get(response[i].getResponse()));
+        }
         return result;
     }
 
@@ -0,0 +1,244 @@
+package gov.nih.nci.bento.service;
+
+import gov.nih.nci.bento.model.ConfigurationDAO;
+import gov.nih.nci.bento.model.cache.LocalResultCache;
+import jakarta.annotation.PostConstruct;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cached ID sets kept as bitmaps over the ints of an {@link IdDictionary}, one dictionary per ID namespace. Unions and
+ * intersections run in process on the bitmaps, cardinalities are counted without resolving members, and members are
+ * only translated back to IDs when they are asked for. Bitmaps are stored sparsely encoded in Redis together with the
+ * dictionary epoch they were encoded with, and the recently used ones are kept in process. As with Redis set commands,
+ * a group that isn't cached is treated as an empty set.
+ */
+@Service("groupSetService")
+public class GroupSetService {
+    private static final Logger logger = LogManager.getLogger(GroupSetService.class);
+    private static final String BITMAP_PREFIX = "bitmap:";
+    private static final String INVALIDATION_CHANNEL = "bitmap:invalidate";
+    private static final int FORMAT_VERSION = 1;
+
+    @Autowired
+    private ConfigurationDAO config;
+    @Autowired
+    private RedisService redisService;
+
+    // Invalidations are published with the id of the instance, an instance skips its own
+    private final String instanceId = UUID.randomUUID().toString();
+    private final Map<String, IdDictionary> dictionaries = new ConcurrentHashMap<>();
+    private LocalResultCache bitmaps;
+
+    @PostConstruct
+    public void init() {
+        bitmaps = new LocalResultCache(config.getBitmapCacheMaxBytes(), config.getLocalCacheTtlSeconds() * 1000L);
+        if (!config.isGroupBitmapsEnabled()) {
+            return;
+        }
+        redisService.subscribe(INVALIDATION_CHANNEL, this::onInvalidation);
+    }
+
+    /**
+     * @return false if the group could not be cached
+     */
+    public boolean cacheGroup(String namespace, String key, List<String> ids) {
+        IdDictionary dictionary = dictionary(namespace);
+        String epoch = dictionary.getEpoch();
+        int[] values = dictionary.encode(ids);
+        String encodedEpoch = dictionary.getEpoch();
+        if (values == null || encodedEpoch == null || (epoch != null && !epoch.equals(encodedEpoch))) {
+            logger.warn("ID dictionary unavailable, group won't be cached: " + key);
+            return false;
+        }
+        BitSet bitmap = new BitSet();
+        for (int value : values) {
+            bitmap.set(value);
+        }
+        store(namespace, key, new CachedBitmap(encodedEpoch, bitmap), config.getRedisGroupSetTtl());
+        return true;
+    }
+
+    /**
+     * @return a copy of the cached group, or null if the group isn't cached
+     */
+    public BitSet getGroup(String namespace, String key) {
+        BitSet bitmap = load(namespace, List.of(key)).get(0);
+        return bitmap != null ? (BitSet) bitmap.clone() : null;
+    }
+
+    public BitSet union(String namespace, String... keys) {
+        BitSet result = new BitSet();
+        for (BitSet bitmap : load(namespace, List.of(keys))) {
+            if (bitmap != null) {
+                result.or(bitmap);
+            }
+        }
+        return result;
+    }
+
+    public BitSet intersection(String namespace, String... keys) {
+        List<BitSet> groups = load(namespace, List.of(keys));
+        if (groups.isEmpty() || groups.contains(null)) {
+            return new BitSet();
+        }
+        BitSet result = (BitSet) groups.get(0).clone();
+        for (int i = 1; i < groups.size(); i++) {
+            result.and(groups.get(i));
+        }
+        return result;
+    }
+
+    public int unionCardinality(String namespace, String... keys) {
+        return union(namespace, keys).cardinality();
+    }
+
+    public int intersectionCardinality(String namespace, String... keys) {
+        return intersection(namespace, keys).cardinality();
+    }
+
+    /**
+     * @return the IDs of the bitmap members, or null if the dictionary could not be reached
+     */
+    public List<String> getMembers(String namespace, BitSet bitmap) {
+        return dictionary(namespace).decode(bitmap.stream().toArray());
+    }
+
+    /**
+     * @return the cardinality of the stored union
+     */
+    public int unionStore(String namespace, String newKey, String... keys) {
+        return storeDerived(namespace, newKey, union(namespace, keys));
+    }
+
+    /**
+     * @return the cardinality of the stored intersection
+     */
+    public int interStore(String namespace, String newKey, String... keys) {
+        return storeDerived(namespace, newKey, intersection(namespace, keys));
+    }
+
+    private int storeDerived(String namespace, String newKey, BitSet result) {
+        String epoch = dictionary(namespace).getEpoch();
+        if (epoch != null) {
+            store(namespace, newKey, new CachedBitmap(epoch, result), config.getRedisDerivedSetTtl());
+        }
+        return result.cardinality();
+    }
+
+    private IdDictionary dictionary(String namespace) {
+        return dictionaries.computeIfAbsent(namespace,
+                k -> new IdDictionary(redisService, k, config.getGroupBitmapsDictionaryCacheMaxIds()));
+    }
+
+    private void store(String namespace, String key, CachedBitmap cached, int ttlSeconds) {
+        String cacheKey = namespace + ":" + key;
+        if (redisService.isInitialized()) {
+            try {
+                redisService.cacheBytes(Map.of(BITMAP_PREFIX + cacheKey, write(cached)), ttlSeconds);
+                redisService.publish(INVALIDATION_CHANNEL, instanceId + " " + cacheKey);
+            } catch (IOException e) {
+                logger.error(e);
+            }
+        }
+        bitmaps.put(cacheKey, cached, weight(cached.bitmap));
+    }
+
+    /**
+     * Bitmaps encoded with another epoch of the dictionary are treated as not cached. So are unreadable bitmaps, the
+     * group lists are then cached again by the code that initialises them.
+     */
+    private List<BitSet> load(String namespace, List<String> keys) {
+        String epoch = dictionary(namespace).getEpoch();
+        List<BitSet> result = new ArrayList<>();
+        List<Integer> remoteIndexes = new ArrayList<>();
+        List<String> remoteKeys = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            String cacheKey = namespace + ":" + keys.get(i);
+            CachedBitmap cached = (CachedBitmap) bitmaps.get(cacheKey);
+            result.add(cached != null && cached.epoch.equals(epoch) ? cached.bitmap : null);
+            if (result.get(i) == null) {
+                remoteIndexes.add(i);
+                remoteKeys.add(BITMAP_PREFIX + cacheKey);
+            }
+        }
+        if (remoteKeys.isEmpty() || !redisService.isInitialized() || epoch == null) {
+            return result;
+        }
+        List<byte[]> data = redisService.getCachedBytes(remoteKeys);
+        for (int i = 0; i < remoteKeys.size(); i++) {
+            if (data.get(i) == null) {
+                continue;
+            }
+            try {
+                CachedBitmap cached = read(data.get(i));
+                if (cached.epoch.equals(epoch)) {
+                    result.set(remoteIndexes.get(i), cached.bitmap);
+                    bitmaps.put(namespace + ":" + keys.get(remoteIndexes.get(i)), cached, weight(cached.bitmap));
+                }
+            } catch (IOException | RuntimeException e) {
+                // Corrupt data fails in the codec with runtime exceptions as well, e.g. a negative bitmap index
+                logger.warn("Unreadable bitmap " + remoteKeys.get(i) + ", group lists will be cached again: " + e);
+                redisService.setGroupListsInitialized(false);
+            }
+        }
+        return result;
+    }
+
+    private void onInvalidation(String message) {
+        int separator = message.indexOf(' ');
+        if (separator > 0 && !message.substring(0, separator).equals(instanceId)) {
+            bitmaps.invalidate(message.substring(separator + 1));
+        }
+    }
+
+    private byte[] write(CachedBitmap cached) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(baos)) {
+            out.write(FORMAT_VERSION);
+            out.writeUTF(cached.epoch);
+            SparseBitmapCodec.encode(out, cached.bitmap);
+        }
+        return baos.toByteArray();
+    }
+
+    private CachedBitmap read(byte[] data) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            int version = in.readUnsignedByte();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported bitmap format " + version);
+            }
+            String epoch = in.readUTF();
+            return new CachedBitmap(epoch, SparseBitmapCodec.decode(in));
+        }
+    }
+
+    private int weight(BitSet bitmap) {
+        // Bitmaps are held in process as plain BitSets, sized by their largest member
+        return bitmap.size() / 8;
+    }
+
+    private static class CachedBitmap {
+        private final String epoch;
+        private final BitSet bitmap;
+
+        private CachedBitmap(String epoch, BitSet bitmap) {
+            this.epoch = epoch;
+            this.bitmap = bitmap;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package gov.nih.nci.bento.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Maps the string IDs of one namespace to dense ints so ID sets can be kept as bitmaps. The mapping is shared through
+ * Redis, every replica assigns the same int to an ID, and is cached in process since an assigned int never changes.
+ * Without Redis the mapping is only kept in process.
+ * <p>
+ * Each namespace has its own keys, on their own slot, and its own int space. The keys have no expiry so volatile-*
+ * eviction policies leave them alone, allkeys-* policies must not be used. A dictionary that lost some of its keys
+ * anyway is refused instead of handing out ints again, and a dictionary created again gets a new epoch so bitmaps
+ * encoded with the old one can be recognised and dropped.
+ * <p>
+ * Ints are never reused, the Redis keys of a namespace grow with every ID ever encoded, up to the 2^31 ints of the
+ * namespace. Deleting the keys reclaims them and starts a new epoch. The mapping kept in process is dropped whenever it
+ * reaches its maximum size and is then read from Redis again. Without Redis it is the only copy of the mapping and
+ * isn't bounded.
+ */
+public class IdDictionary {
+    private static final int SCRIPT_CHUNK_SIZE = 1000;
+    private static final long EPOCH_CHECK_MILLIS = 1000;
+    private static final String EPOCH = "epoch";
+    private static final String ASSIGN_SCRIPT =
+            "local meta = redis.call('HMGET', KEYS[1], 'epoch', 'next') "
+            + "local mapped = redis.call('EXISTS', KEYS[2]) + redis.call('EXISTS', KEYS[3]) "
+            + "if not meta[1] then "
+            + "if mapped > 0 then return redis.error_reply('ID dictionary incomplete') end "
+            + "redis.call('HSET', KEYS[1], 'epoch', ARGV[1], 'next', 0) "
+            + "meta = {ARGV[1], '0'} "
+            + "elseif tonumber(meta[2]) > 0 and mapped < 2 then "
+            + "return redis.error_reply('ID dictionary incomplete') "
+            + "end "
+            + "local result = {meta[1]} "
+            + "for i = 2, #ARGV do "
+            + "local value = redis.call('HGET', KEYS[2], ARGV[i]) "
+            + "if not value then "
+            + "value = redis.call('HINCRBY', KEYS[1], 'next', 1) - 1 "
+            + "redis.call('HSET', KEYS[2], ARGV[i], value) "
+            + "redis.call('HSET', KEYS[3], value, ARGV[i]) "
+            + "end "
+            + "result[i] = tonumber(value) "
+            + "end "
+            + "return result";
+
+    private final RedisService redisService;
+    private final String metaKey;
+    private final String forwardKey;
+    private final String reverseKey;
+    private final int maxCachedIds;
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final Map<Integer, String> names = new ConcurrentHashMap<>();
+    private final AtomicInteger nextLocalId = new AtomicInteger();
+    private volatile String epoch;
+    private volatile long epochCheckedAt;
+
+    public IdDictionary(RedisService redisService, String namespace, int maxCachedIds) {
+        this.redisService = redisService;
+        this.maxCachedIds = maxCachedIds;
+        // The keys of a namespace share a hash tag so the script can run in cluster mode
+        String tag = "{iddict:" + namespace + "}";
+        this.metaKey = tag + ".meta";
+        this.forwardKey = tag + ".forward";
+        this.reverseKey = tag + ".reverse";
+        this.epoch = redisService.isInitialized() ? null : "local";
+    }
+
+    /**
+     * @return the epoch of the mapping, checked against Redis at most once a second, or null if Redis could not be
+     * reached or the dictionary doesn't exist yet
+     */
+    public String getEpoch() {
+        if (!redisService.isInitialized() || System.currentTimeMillis() - epochCheckedAt < EPOCH_CHECK_MILLIS) {
+            return epoch;
+        }
+        List<String> found = redisService.getHashValues(metaKey, new String[]{EPOCH});
+        if (found == null) {
+            return null;
+        }
+        setEpoch(found.get(0));
+        return epoch;
+    }
+
+    /**
+     * @return the int assigned to each ID, or null if Redis could not be reached or the dictionary is incomplete
+     */
+    public int[] encode(List<String> values) {
+        int[] result = new int[values.size()];
+        List<Integer> unknown = new ArrayList<>();
+        for (int i = 0; i < values.size(); i++) {
+            Integer id = ids.get(values.get(i));
+            if (id != null) {
+                result[i] = id;
+            } else {
+                unknown.add(i);
+            }
+        }
+        for (int from = 0; from < unknown.size(); from += SCRIPT_CHUNK_SIZE) {
+            List<Integer> chunk = unknown.subList(from, Math.min(unknown.size(), from + SCRIPT_CHUNK_SIZE));
+            List<String> chunkValues = new ArrayList<>();
+            chunk.forEach(i -> chunkValues.add(values.get(i)));
+            List<Integer> assigned = assign(chunkValues);
+            if (assigned == null) {
+                return null;
+            }
+            for (int i = 0; i < chunk.size(); i++) {
+                result[chunk.get(i)] = assigned.get(i);
+                register(chunkValues.get(i), assigned.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the ID assigned to each int, or null if Redis could not be reached
+     */
+    public List<String> decode(int[] values) {
+        List<String> result = new ArrayList<>(values.length);
+        List<Integer> unknown = new ArrayList<>();
+        for (int i = 0; i < values.length; i++) {
+            String name = names.get(values[i]);
+            result.add(name);
+            if (name == null) {
+                unknown.add(i);
+            }
+        }
+        if (unknown.isEmpty() || !redisService.isInitialized()) {
+            return result;
+        }
+        String[] fields = unknown.stream().map(i -> String.valueOf(values[i])).toArray(String[]::new);
+        List<String> found = redisService.getHashValues(reverseKey, fields);
+        if (found == null) {
+            return null;
+        }
+        for (int i = 0; i < unknown.size(); i++) {
+            String name = found.get(i);
+            result.set(unknown.get(i), name);
+            if (name != null) {
+                register(name, values[unknown.get(i)]);
+            }
+        }
+        return result;
+    }
+
+    private List<Integer> assign(List<String> values) {
+        List<Integer> assigned = new ArrayList<>();
+        if (!redisService.isInitialized()) {
+            values.forEach(value -> assigned.add(ids.computeIfAbsent(value, k -> nextLocalId.getAndIncrement())));
+            return assigned;
+        }
+        List<String> args = new ArrayList<>(values.size() + 1);
+        args.add(UUID.randomUUID().toString());
+        args.addAll(values);
+        Object result = redisService.eval(ASSIGN_SCRIPT, List.of(metaKey, forwardKey, reverseKey), args);
+        if (!(result instanceof List)) {
+            return null;
+        }
+        List<?> list = (List<?>) result;
+        setEpoch(String.valueOf(list.get(0)));
+        for (Object value : list.subList(1, list.size())) {
+            assigned.add(((Long) value).intValue());
+        }
+        return assigned;
+    }
+
+    private synchronized void setEpoch(String current) {
+        epochCheckedAt = System.currentTimeMillis();
+        if (!Objects.equals(current, epoch)) {
+            // The dictionary was created again, the ints cached for the previous epoch mean something else now
+            ids.clear();
+            names.clear();
+        }
+        epoch = current;
+    }
+
+    private void register(String name, int id) {
+        if (ids.size() >= maxCachedIds && redisService.isInitialized()) {
+            ids.clear();
+            names.clear();
+        }
+        ids.put(name, id);
+        names.put(id, name);
+    }
+}
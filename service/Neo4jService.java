@@ -0,0 +1,95 @@
+package gov.nih.nci.bento.service;
+
+import gov.nih.nci.bento.model.ConfigurationDAO;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.neo4j.driver.AuthTokens;
+import org.neo4j.driver.Config;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.GraphDatabase;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.TransactionConfig;
+import org.neo4j.driver.async.AsyncSession;
+import org.neo4j.driver.async.ResultCursor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owns the Neo4j driver and its connection pool, shared by the public and private data fetchers.
+ */
+@Service("neo4jService")
+public class Neo4jService {
+    private static final Logger logger = LogManager.getLogger(Neo4jService.class);
+
+    @Autowired
+    private ConfigurationDAO config;
+
+    private Driver driver;
+    private TransactionConfig transactionConfig;
+
+    @PostConstruct
+    public void init() {
+        String uri = config.getNeo4jUrl();
+        String user = config.getNeo4jUser();
+        String password = config.getNeo4jPassword();
+        Config driverConfig = Config.builder()
+                .withMaxConnectionPoolSize(config.getNeo4jMaxConnectionPoolSize())
+                .withConnectionAcquisitionTimeout(config.getNeo4jConnectionAcquisitionTimeout(), TimeUnit.MILLISECONDS)
+                .withMaxConnectionLifetime(config.getNeo4jMaxConnectionLifetime(), TimeUnit.MILLISECONDS)
+                .withFetchSize(config.getNeo4jFetchSize())
+                .build();
+        driver = GraphDatabase.driver(uri, AuthTokens.basic(user, password), driverConfig);
+        transactionConfig = config.getNeo4jTransactionTimeout() > 0
+                ? TransactionConfig.builder().withTimeout(Duration.ofMillis(config.getNeo4jTransactionTimeout())).build()
+                : TransactionConfig.empty();
+        // The pool opens connections on demand, the first one is opened in the background so startup isn't blocked
+        driver.verifyConnectivityAsync().whenComplete((result, e) -> {
+            if (e != null) {
+                logger.warn("Neo4j not reachable yet: " + e.getMessage());
+            } else {
+                logger.info("Neo4j connection established");
+            }
+        });
+    }
+
+    @PreDestroy
+    private void close() {
+        if (null != driver) {
+            driver.close();
+        }
+    }
+
+    public Session session() {
+        return driver.session();
+    }
+
+    /**
+     * Opens up to the given number of pooled connections by running that many trivial reads concurrently.
+     */
+    public void warmUp(int connections) {
+        List<CompletableFuture<?>> reads = new ArrayList<>();
+        for (int i = 0; i < connections; i++) {
+            AsyncSession session = asyncSession();
+            reads.add(session.executeReadAsync(tx -> tx.runAsync("RETURN 1").thenCompose(ResultCursor::consumeAsync))
+                    .whenComplete((summary, e) -> session.closeAsync())
+                    .toCompletableFuture());
+        }
+        CompletableFuture.allOf(reads.toArray(new CompletableFuture[0])).join();
+    }
+
+    public AsyncSession asyncSession() {
+        return driver.session(AsyncSession.class);
+    }
+
+    public TransactionConfig getTransactionConfig() {
+        return transactionConfig;
+    }
+}
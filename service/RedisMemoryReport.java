@@ -0,0 +1,237 @@
+package gov.nih.nci.bento.service;
+
+import gov.nih.nci.bento.model.ConfigurationDAO;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.resps.ScanResult;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memory and keyspace report per key namespace, built in the background from a sample of the keys of every primary.
+ * Keys are scanned in small batches and their memory usage and expiry read with pipelined MEMORY USAGE and TTL, the
+ * totals of a namespace are extrapolated from the share of the keyspace that was sampled. The largest sampled keys are
+ * kept for the report.
+ */
+@Service("redisMemoryReport")
+public class RedisMemoryReport {
+    private static final Logger logger = LogManager.getLogger(RedisMemoryReport.class);
+    private static final int SCAN_COUNT = 200;
+
+    @Autowired
+    private ConfigurationDAO config;
+    @Autowired
+    private RedisService redisService;
+
+    private ScheduledExecutorService sampler;
+    private volatile Map<String, Object> report = Map.of("state", "PENDING");
+
+    @PostConstruct
+    public void init() {
+        if (!redisService.isInitialized() || config.getRedisMemoryReportInterval() <= 0) {
+            report = Map.of("state", "DISABLED");
+            return;
+        }
+        sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "redis-memory-report");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleWithFixedDelay(this::sample, 1, config.getRedisMemoryReportInterval() * 60L,
+                TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    private void close() {
+        if (null != sampler) {
+            sampler.shutdownNow();
+        }
+    }
+
+    public Map<String, Object> getReport() {
+        return report;
+    }
+
+    private void sample() {
+        long start = System.currentTimeMillis();
+        Map<String, NamespaceStats> namespaces = new TreeMap<>();
+        PriorityQueue<KeySample> largest = new PriorityQueue<>(Comparator.comparingLong(KeySample::getBytes));
+        long[] totals = new long[3];
+        try {
+            redisService.forEachPrimary(jedis -> {
+                long keys = jedis.dbSize();
+                Map<String, NamespaceStats> nodeNamespaces = sampleNode(jedis, largest);
+                long sampled = nodeNamespaces.values().stream().mapToLong(stats -> stats.sampledKeys).sum();
+                // Each node is extrapolated on its own, nodes don't hold the same share of every namespace
+                double scale = sampled > 0 ? (double) keys / sampled : 0;
+                nodeNamespaces.forEach((namespace, stats) ->
+                        namespaces.computeIfAbsent(namespace, k -> new NamespaceStats()).add(stats, scale));
+                totals[0] += keys;
+                totals[1] += sampled;
+                totals[2] += usedMemory(jedis);
+            });
+        } catch (JedisException e) {
+            logger.warn("Redis memory report failed: " + e.getMessage());
+            return;
+        } catch (RuntimeException e) {
+            // Anything escaping to the scheduler would cancel every later run
+            logger.error("Redis memory report failed", e);
+            return;
+        }
+        List<Map<String, Object>> largestKeys = new ArrayList<>();
+        largest.stream().sorted(Comparator.comparingLong(KeySample::getBytes).reversed())
+                .forEach(sample -> largestKeys.add(sample.toMap()));
+        Map<String, Object> namespaceReport = new LinkedHashMap<>();
+        namespaces.forEach((namespace, stats) -> namespaceReport.put(namespace, stats.toMap()));
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("state", "SAMPLED");
+        result.put("sampledAt", start);
+        result.put("durationMillis", System.currentTimeMillis() - start);
+        result.put("keys", totals[0]);
+        result.put("sampledKeys", totals[1]);
+        result.put("usedMemoryBytes", totals[2]);
+        result.put("namespaces", namespaceReport);
+        result.put("largestKeys", largestKeys);
+        report = result;
+        logger.debug("Redis memory report: " + result);
+    }
+
+    private Map<String, NamespaceStats> sampleNode(Jedis jedis, PriorityQueue<KeySample> largest) {
+        Map<String, NamespaceStats> namespaces = new TreeMap<>();
+        ScanParams params = new ScanParams().count(SCAN_COUNT);
+        String cursor = ScanParams.SCAN_POINTER_START;
+        int sampled = 0;
+        do {
+            ScanResult<String> page = jedis.scan(cursor, params);
+            cursor = page.getCursor();
+            List<String> keys = page.getResult();
+            List<Response<Long>> sizes = new ArrayList<>(keys.size());
+            List<Response<Long>> ttls = new ArrayList<>(keys.size());
+            try (Pipeline pipeline = jedis.pipelined()) {
+                for (String key : keys) {
+                    sizes.add(pipeline.memoryUsage(key));
+                    ttls.add(pipeline.ttl(key));
+                }
+                pipeline.sync();
+            }
+            for (int i = 0; i < keys.size(); i++) {
+                Long bytes = sizes.get(i).get();
+                if (bytes == null) {
+                    // Expired between SCAN and MEMORY USAGE
+                    continue;
+                }
+                long ttl = ttls.get(i).get();
+                namespaces.computeIfAbsent(namespace(keys.get(i)), k -> new NamespaceStats()).record(bytes, ttl);
+                largest.add(new KeySample(keys.get(i), bytes, ttl));
+                if (largest.size() > config.getRedisMemoryReportLargestKeys()) {
+                    largest.poll();
+                }
+                sampled++;
+            }
+        } while (!ScanParams.SCAN_POINTER_START.equals(cursor) && sampled < config.getRedisMemoryReportMaxKeys());
+        return namespaces;
+    }
+
+    private long usedMemory(Jedis jedis) {
+        for (String line : jedis.info("memory").split("\r?\n")) {
+            if (line.startsWith("used_memory:")) {
+                return Long.parseLong(line.substring("used_memory:".length()).trim());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * The key up to its first ':' or '.', without hash tag braces, so set.{key}, {set}.key and bitmap:key are reported
+     * as set, set and bitmap.
+     */
+    private String namespace(String key) {
+        int end = key.length();
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c == ':' || c == '.') {
+                end = i;
+                break;
+            }
+        }
+        String namespace = key.substring(0, end).replace("{", "").replace("}", "");
+        return namespace.isEmpty() ? key : namespace;
+    }
+
+    private static class NamespaceStats {
+        private long sampledKeys;
+        private long sampledBytes;
+        private long withoutTtl;
+        private double estimatedKeys;
+        private double estimatedBytes;
+
+        private void record(long bytes, long ttl) {
+            sampledKeys++;
+            sampledBytes += bytes;
+            // -1 is a key without expiry
+            if (ttl == -1) {
+                withoutTtl++;
+            }
+        }
+
+        private void add(NamespaceStats node, double scale) {
+            sampledKeys += node.sampledKeys;
+            sampledBytes += node.sampledBytes;
+            withoutTtl += node.withoutTtl;
+            estimatedKeys += node.sampledKeys * scale;
+            estimatedBytes += node.sampledBytes * scale;
+        }
+
+        private Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("sampledKeys", sampledKeys);
+            map.put("sampledBytes", sampledBytes);
+            map.put("sampledKeysWithoutTtl", withoutTtl);
+            map.put("estimatedKeys", Math.round(estimatedKeys));
+            map.put("estimatedBytes", Math.round(estimatedBytes));
+            return map;
+        }
+    }
+
+    private static class KeySample {
+        private final String key;
+        private final long bytes;
+        private final long ttl;
+
+        private KeySample(String key, long bytes, long ttl) {
+            this.key = key;
+            this.bytes = bytes;
+            this.ttl = ttl;
+        }
+
+        private long getBytes() {
+            return bytes;
+        }
+
+        private Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("key", key);
+            map.put("bytes", bytes);
+            map.put("ttlSeconds", ttl);
+            return map;
+        }
+    }
+}
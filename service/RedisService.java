@@ -3,44 +3,151 @@ package gov.nih.nci.bento.service;
 import gov.nih.nci.bento.model.ConfigurationDAO;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
+import redis.clients.jedis.ClusterPipeline;
+import redis.clients.jedis.ConnectionPool;
+import redis.clients.jedis.ConnectionPoolConfig;
+import redis.clients.jedis.DefaultJedisClientConfig;
 import redis.clients.jedis.HostAndPort;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisCluster;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.PipelineBase;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.commands.JedisCommands;
 import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.params.SetParams;
+import redis.clients.jedis.util.JedisClusterCRC16;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 @Service("redisService")
 public class RedisService {
     private static final Logger logger = LogManager.getLogger(RedisService.class);
+    private static final long SUBSCRIBE_RETRY_MILLIS = 5000;
+    private static final int CLUSTER_MAX_ATTEMPTS = 5;
+    private static final byte COMPRESSED_MARKER = (byte) 0xC1;
+    private static final String OTHER_KEYS = "other";
+    private static final String UNLOCK_SCRIPT =
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end";
+    // Sets are written together with their expiry, a set is never left without one between two commands
+    private static final String STORE_SCRIPT =
+            "local count = redis.call(ARGV[1], KEYS[1], unpack(KEYS, 2)) "
+            + "if tonumber(ARGV[2]) > 0 then redis.call('EXPIRE', KEYS[1], ARGV[2]) end "
+            + "return count";
+    private static final String ADD_MEMBERS_SCRIPT =
+            "if ARGV[1] == '1' then redis.call('DEL', KEYS[1]) end "
+            + "if #ARGV > 2 then redis.call('SADD', KEYS[1], unpack(ARGV, 3)) end "
+            + "if tonumber(ARGV[2]) > 0 then redis.call('EXPIRE', KEYS[1], ARGV[2]) end "
+            + "return 1";
+    // unpack is limited by the Lua stack, larger chunks are split further
+    private static final int SCRIPT_MAX_MEMBERS = 5000;
 
     @Autowired
     private ConfigurationDAO config;
+    // Lazy, the group set service is built on this service
+    @Autowired
+    @Lazy
+    private GroupSetService groupSetService;
 
     private JedisPool pool;
     private JedisCluster cluster;
     private Boolean useCluster;
     private int ttl;
     private boolean isInitialized;
+    private volatile boolean healthy = true;
+    private ScheduledExecutorService healthCheck;
+    private CircuitBreaker circuitBreaker;
+    private ReplicaRouter replicaRouter;
     private boolean groupListsInitialized;
     private HashSet<String> groups = new HashSet<>();
     private HashMap<String, String> parameterMappings = new HashMap<>();
+    private final Map<String, List<Consumer<String>>> listeners = new ConcurrentHashMap<>();
+    private volatile Subscriber subscriber;
+    private Thread subscriberThread;
+    private volatile boolean closed;
+    private final Map<String, CompressionStats> compressionStats = new ConcurrentHashMap<>();
+    private final Set<String> compressionStatsNamespaces = new HashSet<>();
 
     @PostConstruct
     public void init() {
+        for (String namespace : config.getRedisCompressionStatsNamespaces().split(",")) {
+            if (!namespace.isBlank()) {
+                compressionStatsNamespaces.add(namespace.trim());
+            }
+        }
+        circuitBreaker = new CircuitBreaker(config.getRedisCircuitBreakerWindowSize(),
+                config.getRedisCircuitBreakerMinimumCalls(), config.getRedisCircuitBreakerFailureRate(),
+                config.getRedisCircuitBreakerSlowCallRate(), config.getRedisCircuitBreakerSlowCallMillis(),
+                config.getRedisCircuitBreakerOpenMillis(), config.getRedisCircuitBreakerHalfOpenCalls());
         isInitialized = connect();
+        if (isInitialized && (config.getRedisHealthCheckInterval() > 0 || null != replicaRouter)) {
+            healthCheck = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "redis-health-check");
+                thread.setDaemon(true);
+                return thread;
+            });
+            if (config.getRedisHealthCheckInterval() > 0) {
+                // With replicas the first check runs right away, it is the one that finds them
+                healthCheck.scheduleWithFixedDelay(this::checkHealth, null != replicaRouter ? 0
+                        : config.getRedisHealthCheckInterval(), config.getRedisHealthCheckInterval(), TimeUnit.SECONDS);
+            } else {
+                logger.warn("Redis health check disabled, replicas are only looked up once");
+                healthCheck.execute(this::checkHealth);
+            }
+        }
     }
 
     @PreDestroy
     private void close() {
+        if (null != healthCheck) {
+            healthCheck.shutdownNow();
+        }
+        closed = true;
+        Subscriber current = subscriber;
+        if (null != current && current.isSubscribed()) {
+            current.unsubscribe();
+        }
+        if (null != replicaRouter) {
+            replicaRouter.close();
+        }
         if (null != pool) {
             pool.close();
         }
@@ -53,12 +160,95 @@ public class RedisService {
         return isInitialized;
     }
 
+    /**
+     * Result of the last periodic health check, always true until a check fails.
+     */
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    /**
+     * Connection pool usage and circuit breaker state, in cluster mode summed over the pools of every node.
+     */
+    public Map<String, Object> getPoolMetrics() {
+        List<GenericObjectPool<?>> pools = new ArrayList<>();
+        if (null != pool) {
+            pools.add(pool);
+        }
+        if (null != cluster) {
+            pools.addAll(cluster.getClusterNodes().values());
+        }
+        int active = 0;
+        int idle = 0;
+        int waiters = 0;
+        long meanBorrowWait = 0;
+        long maxBorrowWait = 0;
+        for (GenericObjectPool<?> nodePool : pools) {
+            active += nodePool.getNumActive();
+            idle += nodePool.getNumIdle();
+            waiters += nodePool.getNumWaiters();
+            meanBorrowWait = Math.max(meanBorrowWait, nodePool.getMeanBorrowWaitTimeMillis());
+            maxBorrowWait = Math.max(maxBorrowWait, nodePool.getMaxBorrowWaitTimeMillis());
+        }
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("initialized", isInitialized);
+        metrics.put("healthy", healthy);
+        metrics.put("pools", pools.size());
+        metrics.put("active", active);
+        metrics.put("idle", idle);
+        metrics.put("waiters", waiters);
+        metrics.put("meanBorrowWaitMillis", meanBorrowWait);
+        metrics.put("maxBorrowWaitMillis", maxBorrowWait);
+        metrics.put("circuitBreaker", circuitBreaker.getMetrics());
+        if (null != replicaRouter) {
+            metrics.put("replicaReads", replicaRouter.getMetrics());
+        }
+        Map<String, Object> compression = new TreeMap<>();
+        compressionStats.forEach((namespace, stats) -> compression.put(namespace, stats.getMetrics()));
+        metrics.put("compression", compression);
+        return metrics;
+    }
+
+    public void ping() {
+        if (useCluster) {
+            cluster.ping();
+        } else {
+            try (Jedis jedis = pool.getResource()) {
+                jedis.ping();
+            }
+        }
+    }
+
+    /**
+     * Runs the task with a connection to the primary, in cluster mode to every primary node. Meant for background work,
+     * the calls don't go through the circuit breaker.
+     */
+    public void forEachPrimary(Consumer<Jedis> task) {
+        if (!useCluster) {
+            try (Jedis jedis = pool.getResource()) {
+                task.accept(jedis);
+            }
+            return;
+        }
+        for (ConnectionPool nodePool : cluster.getClusterNodes().values()) {
+            try (Jedis jedis = new Jedis(nodePool.getResource())) {
+                if (jedis.info("replication").contains("role:master")) {
+                    task.accept(jedis);
+                }
+            }
+        }
+    }
+
     public String[] getGroups() {
         return formatKeys(groups.toArray(new String[0]));
     }
 
     public void cacheGroup(String key, String[] value) {
-        cacheValue(key, value, true);
+        if (config.isGroupBitmapsEnabled()) {
+            groupSetService.cacheGroup(config.getGroupBitmapsIdNamespace(), formatKey(key), Arrays.asList(value));
+        } else {
+            cacheValue(key, value, true);
+        }
         groups.add(key.split(":")[0]);
     }
 
@@ -67,67 +257,477 @@ public class RedisService {
     }
 
     public void cacheValue(String keyInput, String[] values, boolean isSet) {
+        if (!isSet) {
+            // Single values take the byte path, so large ones are compressed like every other cached value
+            cacheBytes(Map.of(keyInput, values[0].getBytes(StandardCharsets.UTF_8)));
+            return;
+        }
         String key = formatKey(keyInput);
+        CircuitBreaker.Permit permit = circuitBreaker.tryAcquire();
+        if (permit == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        boolean failed = false;
+        int commands = 1;
         Jedis jedis = null;
         try {
-            if (isSet) {
-                key = addSetHashTag(key);
-                if (useCluster) {
-                    cluster.sadd(key, values);
-                } else {
-                    jedis = pool.getResource();
-                    jedis.sadd(key, values);
+            // Large ID lists are added in chunks, a single huge SADD blocks Redis for every other client
+            key = addSetHashTag(key);
+            if (useCluster) {
+                try (ClusterPipeline pipeline = cluster.pipelined()) {
+                    commands = addMembers(pipeline, key, values, false, config.getRedisGroupSetTtl());
+                    pipeline.sync();
                 }
             } else {
-                if (useCluster) {
-                    if (ttl > 0) {
-                        cluster.setex(key, config.getRedisTTL(), values[0]);
-                    } else {
-                        cluster.set(key, values[0]);
-                    }
-                } else {
-                    jedis = pool.getResource();
-                    if (ttl > 0) {
-                        jedis.setex(key, config.getRedisTTL(), values[0]);
-                    } else {
-                        jedis.set(key, values[0]);
-                    }
+                jedis = pool.getResource();
+                try (Pipeline pipeline = jedis.pipelined()) {
+                    commands = addMembers(pipeline, key, values, false, config.getRedisGroupSetTtl());
+                    pipeline.sync();
                 }
             }
             logger.info("Cache Entry Created");
         } catch (NullPointerException e) {
             logger.warn("Redis not connected, query won't be cached!");
         } catch (JedisException e) {
+            failed = true;
             logger.error(e);
             logger.warn("Redis exception caught, query won't be cached!");
         } finally {
+            circuitBreaker.record(permit, System.nanoTime() - start, failed, commands);
             if (jedis != null) {
                 jedis.close();
             }
         }
     }
 
+    /**
+     * Reads a value written by cacheValue, decompressing it if it was stored compressed.
+     */
     public String getCachedValue(String key) {
+        byte[] value = getCachedBytes(List.of(key)).get(0);
+        return value != null ? new String(value, StandardCharsets.UTF_8) : null;
+    }
+
+    /**
+     * Reads a value from the primary whatever the read preference, for values a lagging replica must not return.
+     *
+     * @return the value, or null if it doesn't exist or Redis could not be reached
+     */
+    public String getPrimaryValue(String keyInput) {
+        String key = formatKey(keyInput);
+        CircuitBreaker.Permit permit = circuitBreaker.tryAcquire();
+        if (permit == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        boolean failed = false;
+        Jedis jedis = null;
         try {
-            return getFromCache(new String[]{key}, RETURNTYPE.VALUE).iterator().next();
+            if (useCluster) {
+                return cluster.get(key);
+            } else {
+                jedis = pool.getResource();
+                return jedis.get(key);
+            }
         } catch (NullPointerException e) {
+            logger.warn("Redis not connected, value won't be read!");
             return null;
+        } catch (JedisException e) {
+            failed = true;
+            logger.error(e);
+            logger.warn("Redis exception caught, value won't be read!");
+            return null;
+        } finally {
+            circuitBreaker.record(permit, System.nanoTime() - start, failed);
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+    }
+
+    /**
+     * Writes several values in a single pipelined round trip, in cluster mode the pipeline sends each key to the node
+     * owning its slot.
+     */
+    public void cacheBytes(Map<String, byte[]> entries) {
+        cacheBytes(entries, ttl);
+    }
+
+    /**
+     * Writes several values in a single pipelined round trip, values written with a ttl of 0 are kept until they are
+     * overwritten or evicted.
+     */
+    public void cacheBytes(Map<String, byte[]> entries, int ttlSeconds) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        CircuitBreaker.Permit permit = circuitBreaker.tryAcquire();
+        if (permit == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        boolean failed = false;
+        Jedis jedis = null;
+        try {
+            if (useCluster) {
+                try (ClusterPipeline pipeline = cluster.pipelined()) {
+                    entries.forEach((key, value) -> set(pipeline, formatKey(key).getBytes(StandardCharsets.UTF_8),
+                            compress(key, value), ttlSeconds));
+                    pipeline.sync();
+                }
+            } else {
+                jedis = pool.getResource();
+                try (Pipeline pipeline = jedis.pipelined()) {
+                    entries.forEach((key, value) -> set(pipeline, formatKey(key).getBytes(StandardCharsets.UTF_8),
+                            compress(key, value), ttlSeconds));
+                    pipeline.sync();
+                }
+            }
+            logger.info(String.format("%d Cache Entries Created", entries.size()));
+        } catch (NullPointerException e) {
+            logger.warn("Redis not connected, query won't be cached!");
+        } catch (JedisException e) {
+            failed = true;
+            logger.error(e);
+            logger.warn("Redis exception caught, query won't be cached!");
+        } finally {
+            circuitBreaker.record(permit, System.nanoTime() - start, failed, entries.size());
+            if (jedis != null) {
+                jedis.close();
+            }
         }
     }
 
+    /**
+     * Reads several values in a single round trip. MGET only accepts keys of the same slot in cluster mode, so keys are
+     * grouped by slot and the MGETs are pipelined, on the replicas picked by the read preference when there are any.
+     * Missing keys are returned as null.
+     */
+    public List<byte[]> getCachedBytes(List<String> keysInput) {
+        byte[][] keys = new byte[keysInput.size()][];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = formatKey(keysInput.get(i)).getBytes(StandardCharsets.UTF_8);
+        }
+        List<byte[]> values = new ArrayList<>(Collections.nCopies(keys.length, null));
+        CircuitBreaker.Permit permit = circuitBreaker.tryAcquire();
+        if (permit == null) {
+            return values;
+        }
+        long start = System.nanoTime();
+        boolean failed = false;
+        Jedis jedis = null;
+        try {
+            Map<Integer, List<Integer>> slots = new HashMap<>();
+            for (int i = 0; i < keys.length; i++) {
+                int slot = useCluster ? JedisClusterCRC16.getSlot(keys[i]) : ReplicaRouter.ANY_SLOT;
+                slots.computeIfAbsent(slot, k -> new ArrayList<>()).add(i);
+            }
+            Map<Integer, byte[][]> slotKeys = new HashMap<>();
+            slots.forEach((slot, indexes) ->
+                    slotKeys.put(slot, indexes.stream().map(i -> keys[i]).toArray(byte[][]::new)));
+            Map<Integer, List<byte[]>> slotValues = new HashMap<>();
+            if (null != replicaRouter) {
+                slotValues.putAll(replicaRouter.mget(slotKeys));
+            }
+            List<Integer> primarySlots = new ArrayList<>(slots.keySet());
+            primarySlots.removeAll(slotValues.keySet());
+            if (useCluster && !primarySlots.isEmpty()) {
+                Map<Integer, Response<List<byte[]>>> responses = new HashMap<>();
+                try (ClusterPipeline pipeline = cluster.pipelined()) {
+                    for (Integer slot : primarySlots) {
+                        responses.put(slot, pipeline.mget(slotKeys.get(slot)));
+                    }
+                    pipeline.sync();
+                }
+                responses.forEach((slot, response) -> slotValues.put(slot, response.get()));
+            } else if (!primarySlots.isEmpty()) {
+                jedis = pool.getResource();
+                slotValues.put(ReplicaRouter.ANY_SLOT, jedis.mget(keys));
+            }
+            slots.forEach((slot, indexes) -> {
+                List<byte[]> result = slotValues.get(slot);
+                for (int i = 0; i < indexes.size(); i++) {
+                    values.set(indexes.get(i), result.get(i));
+                }
+            });
+        } catch (NullPointerException e) {
+            logger.warn("Redis not connected, fall back to query Neo4j!");
+        } catch (JedisException e) {
+            failed = true;
+            logger.error(e);
+            logger.warn("Redis exception caught, fall back to query Neo4j!");
+        } finally {
+            circuitBreaker.record(permit, System.nanoTime() - start, failed);
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+        for (int i = 0; i < values.size(); i++) {
+            values.set(i, decompress(keysInput.get(i), values.get(i)));
+        }
+        return values;
+    }
+
+    /**
+     * Acquires a short lease on a key, only one holder of the key at a time until it is released or expires. A lease
+     * is reported as acquired when Redis can't be reached, so callers go ahead instead of waiting.
+     */
+    public boolean tryLock(String keyInput, String token, long ttlMillis) {
+        String key = formatKey(keyInput);
+        SetParams params = SetParams.setParams().nx().px(ttlMillis);
+        CircuitBreaker.Permit permit = circuitBreaker.tryAcquire();
+        if (permit == null) {
+            return true;
+        }
+        long start = System.nanoTime();
+        boolean failed = false;
+        Jedis jedis = null;
+        try {
+            if (useCluster) {
+                return cluster.set(key, token, params) != null;
+            } else {
+                jedis = pool.getResource();
+                return jedis.set(key, token, params) != null;
+            }
+        } catch (NullPointerException e) {
+            logger.warn("Redis not connected, lease won't be acquired!");
+            return true;
+        } catch (JedisException e) {
+            failed = true;
+            logger.error(e);
+            logger.warn("Redis exception caught, lease won't be acquired!");
+            return true;
+        } finally {
+            circuitBreaker.record(permit, System.nanoTime() - start, failed);
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+    }
+
+    public void unlock(String keyInput, String token) {
+        // Only the holder may release a lease, it may have expired and been acquired by another replica
+        List<String> keys = List.of(formatKey(keyInput));
+        List<String> args = List.of(token);
+        CircuitBreaker.Permit permit = circuitBreaker.tryAcquire();
+        if (permit == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        boolean failed = false;
+        Jedis jedis = null;
+        try {
+            if (useCluster) {
+                cluster.eval(UNLOCK_SCRIPT, keys, args);
+            } else {
+                jedis = pool.getResource();
+                jedis.eval(UNLOCK_SCRIPT, keys, args);
+            }
+        } catch (NullPointerException e) {
+            logger.warn("Redis not connected, lease won't be released!");
+        } catch (JedisException e) {
+            failed = true;
+            logger.error(e);
+            logger.warn("Redis exception caught, lease won't be released!");
+        } finally {
+            circuitBreaker.record(permit, System.nanoTime() - start, failed);
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+    }
+
+    /**
+     * Runs a Lua script, in cluster mode every key must hash to the same slot.
+     *
+     * @return the script result, or null if Redis could not be reached
+     */
+    public Object eval(String script, List<String> keysInput, List<String> args) {
+        List<String> keys = new ArrayList<>();
+        keysInput.forEach(key -> keys.add(formatKey(key)));
+        CircuitBreaker.Permit permit = circuitBreaker.tryAcquire();
+        if (permit == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        boolean failed = false;
+        Jedis jedis = null;
+        try {
+            if (useCluster) {
+                return cluster.eval(script, keys, args);
+            } else {
+                jedis = pool.getResource();
+                return jedis.eval(script, keys, args);
+            }
+        } catch (NullPointerException e) {
+            logger.warn("Redis not connected, script won't be run!");
+            return null;
+        } catch (JedisException e) {
+            failed = true;
+            logger.error(e);
+            logger.warn("Redis exception caught, script won't be run!");
+            return null;
+        } finally {
+            circuitBreaker.record(permit, System.nanoTime() - start, failed);
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+    }
+
+    /**
+     * @return the values of the hash fields, null for missing fields, or null if Redis could not be reached
+     */
+    public List<String> getHashValues(String keyInput, String[] fields) {
+        String key = formatKey(keyInput);
+        CircuitBreaker.Permit permit = circuitBreaker.tryAcquire();
+        if (permit == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        boolean failed = false;
+        Jedis jedis = null;
+        try {
+            if (useCluster) {
+                return cluster.hmget(key, fields);
+            } else {
+                jedis = pool.getResource();
+                return jedis.hmget(key, fields);
+            }
+        } catch (NullPointerException e) {
+            logger.warn("Redis not connected, fall back to query Neo4j!");
+            return null;
+        } catch (JedisException e) {
+            failed = true;
+            logger.error(e);
+            logger.warn("Redis exception caught, fall back to query Neo4j!");
+            return null;
+        } finally {
+            circuitBreaker.record(permit, System.nanoTime() - start, failed);
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+    }
+
+    public void publish(String channel, String message) {
+        CircuitBreaker.Permit permit = circuitBreaker.tryAcquire();
+        if (permit == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        boolean failed = false;
+        Jedis jedis = null;
+        try {
+            if (useCluster) {
+                cluster.publish(channel, message);
+            } else {
+                jedis = pool.getResource();
+                jedis.publish(channel, message);
+            }
+        } catch (NullPointerException e) {
+            logger.warn("Redis not connected, message won't be published!");
+        } catch (JedisException e) {
+            failed = true;
+            logger.error(e);
+            logger.warn("Redis exception caught, message won't be published!");
+        } finally {
+            circuitBreaker.record(permit, System.nanoTime() - start, failed);
+            if (jedis != null) {
+                jedis.close();
+            }
+        }
+    }
+
+    /**
+     * Listens to a channel until the service is closed. Every channel shares one subscriber thread and one connection
+     * of its own, outside the pools, which is restored after a connection failure.
+     */
+    public void subscribe(String channel, Consumer<String> listener) {
+        if (!isInitialized) {
+            return;
+        }
+        synchronized (listeners) {
+            listeners.computeIfAbsent(channel, k -> new CopyOnWriteArrayList<>()).add(listener);
+            if (null == subscriberThread) {
+                subscriberThread = new Thread(this::runSubscriber, "redis-subscriber");
+                subscriberThread.setDaemon(true);
+                subscriberThread.start();
+            } else if (null != subscriber && subscriber.isSubscribed()) {
+                subscriber.subscribeMissing();
+            }
+        }
+    }
+
+    private void runSubscriber() {
+        int attempt = 0;
+        while (!closed) {
+            Subscriber current = new Subscriber();
+            String[] channels;
+            synchronized (listeners) {
+                channels = listeners.keySet().toArray(new String[0]);
+                current.requested.addAll(listeners.keySet());
+                subscriber = current;
+            }
+            // Messages published in a cluster reach every node, any node can be subscribed to
+            HostAndPort node = useCluster ? clusterNode(attempt) : new HostAndPort(config.getRedisHost(),
+                    config.getRedisPort());
+            try (Jedis jedis = new Jedis(node, DefaultJedisClientConfig.builder()
+                    .connectionTimeoutMillis(config.getRedisConnectTimeout())
+                    .socketTimeoutMillis(config.getRedisSocketTimeout()).build())) {
+                jedis.subscribe(current, channels);
+            } catch (JedisException e) {
+                if (closed) {
+                    return;
+                }
+                attempt++;
+                logger.warn("Redis subscription lost, retrying: " + e.getMessage());
+                try {
+                    Thread.sleep(SUBSCRIBE_RETRY_MILLIS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private HostAndPort clusterNode(int attempt) {
+        List<String> nodes = new ArrayList<>(cluster.getClusterNodes().keySet());
+        if (nodes.isEmpty()) {
+            return new HostAndPort(config.getRedisHost(), config.getRedisPort());
+        }
+        return HostAndPort.from(nodes.get(attempt % nodes.size()));
+    }
+
     public Set<String> getCachedSet(String key) {
+        if (config.isGroupBitmapsEnabled()) {
+            BitSet group = groupSetService.getGroup(config.getGroupBitmapsIdNamespace(), formatKey(key));
+            return group != null ? getMembers(group) : new HashSet<>();
+        }
         return getFromCache(new String[]{key}, RETURNTYPE.SET);
     }
 
     public Set<String> getUnion(String[] keys) {
+        if (config.isGroupBitmapsEnabled()) {
+            return getMembers(groupSetService.union(config.getGroupBitmapsIdNamespace(), formatKeys(keys)));
+        }
         return getFromCache(keys, RETURNTYPE.UNION);
     }
 
     public Set<String> getIntersection(String[] keys) {
+        if (config.isGroupBitmapsEnabled()) {
+            return getMembers(groupSetService.intersection(config.getGroupBitmapsIdNamespace(), formatKeys(keys)));
+        }
         return getFromCache(keys, RETURNTYPE.INTERSECTION);
     }
 
     public Long unionStore(String newKey, String[] keys) {
+        if (config.isGroupBitmapsEnabled()) {
+            return (long) groupSetService.unionStore(config.getGroupBitmapsIdNamespace(), formatKey(newKey),
+                    formatKeys(keys));
+        }
         Long output = store(keys, newKey, STORETYPE.UNION);
         if (output > 0) {
             logger.info("Union stored: " + newKey);
@@ -136,6 +736,10 @@ public class RedisService {
     }
 
     public Long interStore(String newKey, String[] keys) {
+        if (config.isGroupBitmapsEnabled()) {
+            return (long) groupSetService.interStore(config.getGroupBitmapsIdNamespace(), formatKey(newKey),
+                    formatKeys(keys));
+        }
         Long output = store(keys, newKey, STORETYPE.INTERSECTION);
         if (output > 0) {
             logger.info("Intersection stored: " + newKey);
@@ -143,6 +747,19 @@ public class RedisService {
         return output;
     }
 
+    /**
+     * @return the IDs of a group bitmap, or null if the ID dictionary could not be reached
+     */
+    private Set<String> getMembers(BitSet group) {
+        List<String> members = groupSetService.getMembers(config.getGroupBitmapsIdNamespace(), group);
+        if (members == null) {
+            return null;
+        }
+        Set<String> output = new HashSet<>(members);
+        output.remove(null);
+        return output;
+    }
+
     public boolean isGroupListsInitialized() {
         return groupListsInitialized;
     }
@@ -161,40 +778,33 @@ public class RedisService {
 
     private Set<String> getFromCache(String[] keysInput, RETURNTYPE operation) {
         String[] keys = formatKeys(keysInput);
+        CircuitBreaker.Permit permit = circuitBreaker.tryAcquire();
+        if (permit == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        boolean failed = false;
         Jedis jedis = null;
         String key = keys[0];
         String taggedKey = addSetHashTag(key);
         String[] taggedKeys = addSetHashTag(keys);
         try {
             switch (operation) {
-                case VALUE:
-                    if (useCluster) {
-                        String value = cluster.get(key);
-                        Set<String> output = new HashSet<>();
-                        output.add(value);
-                        return output;
-                    } else {
-                        jedis = pool.getResource();
-                        Set<String> output = new HashSet<>();
-                        output.add(jedis.get(key));
-                        return output;
-                    }
                 case SET:
-                    if (useCluster) {
-                        return cluster.smembers(taggedKey);
-                    } else {
-                        jedis = pool.getResource();
-                        return jedis.smembers(taggedKey);
-                    }
+                    return read(taggedKey, commands -> commands.smembers(taggedKey));
                 case UNION:
-                    if (useCluster) {
+                    if (useCluster && config.isRedisSetShardingEnabled()) {
+                        return gatherUnion(taggedKeys);
+                    } else if (useCluster) {
                         return cluster.sunion(taggedKeys);
                     } else {
                         jedis = pool.getResource();
                         return jedis.sunion(taggedKeys);
                     }
                 case INTERSECTION:
-                    if (useCluster) {
+                    if (useCluster && config.isRedisSetShardingEnabled()) {
+                        return gatherIntersection(taggedKeys);
+                    } else if (useCluster) {
                         return cluster.sinter(taggedKeys);
                     } else {
                         jedis = pool.getResource();
@@ -208,10 +818,12 @@ public class RedisService {
             logger.warn("Redis not connected, fall back to query Neo4j!");
             return null;
         } catch (JedisException e) {
+            failed = true;
             logger.error(e);
             logger.warn("Redis exception caught, fall back to query Neo4j!");
             return null;
         } finally {
+            circuitBreaker.record(permit, System.nanoTime() - start, failed);
             if (jedis != null) {
                 jedis.close();
             }
@@ -222,29 +834,40 @@ public class RedisService {
         //Format keys
         String[] keys = addSetHashTag(formatKeys(keysInput));
         String newKey = addSetHashTag(formatKey(newKeyInput));
+        CircuitBreaker.Permit permit = circuitBreaker.tryAcquire();
+        if (permit == null) {
+            return 0L;
+        }
+        long start = System.nanoTime();
+        boolean failed = false;
+        int commands = 1;
         Jedis jedis = null;
         try {
-            if (type == STORETYPE.UNION) {
-                if (useCluster) {
-                    return cluster.sunionstore(newKey, keys);
-                } else {
-                    jedis = pool.getResource();
-                    return jedis.sunionstore(newKey, keys);
-                }
+            if (useCluster && config.isRedisSetShardingEnabled()) {
+                // The source sets live on different slots, the result is computed here and written to its own slot
+                Set<String> members = type == STORETYPE.UNION ? gatherUnion(keys) : gatherIntersection(keys);
+                commands = keys.length + replaceSet(newKey, members);
+                return (long) members.size();
+            }
+            List<String> scriptKeys = new ArrayList<>();
+            scriptKeys.add(newKey);
+            scriptKeys.addAll(Arrays.asList(keys));
+            List<String> args = List.of(type == STORETYPE.UNION ? "SUNIONSTORE" : "SINTERSTORE",
+                    String.valueOf(config.getRedisDerivedSetTtl()));
+            if (useCluster) {
+                return (Long) cluster.eval(STORE_SCRIPT, scriptKeys, args);
             } else {
-                if (useCluster) {
-                    return cluster.sinterstore(newKey, keys);
-                } else {
-                    jedis = pool.getResource();
-                    return jedis.sinterstore(newKey, keys);
-                }
+                jedis = pool.getResource();
+                return (Long) jedis.eval(STORE_SCRIPT, scriptKeys, args);
             }
         } catch (NullPointerException e) {
             logger.warn("Redis not connected, query won't be cached!");
         } catch (JedisException e) {
+            failed = true;
             logger.error(e);
             logger.warn("Redis exception caught, query won't be cached!");
         } finally {
+            circuitBreaker.record(permit, System.nanoTime() - start, failed, commands);
             if (jedis != null) {
                 jedis.close();
             }
@@ -252,6 +875,116 @@ public class RedisService {
         return 0L;
     }
 
+    /**
+     * Fetches every set in one pipelined round trip, each SMEMBERS going to the node that owns the set.
+     */
+    private Set<String> gatherUnion(String[] keys) {
+        List<Response<Set<String>>> responses = new ArrayList<>();
+        try (ClusterPipeline pipeline = cluster.pipelined()) {
+            for (String key : keys) {
+                responses.add(pipeline.smembers(key));
+            }
+            pipeline.sync();
+        }
+        Set<String> result = new HashSet<>();
+        for (Response<Set<String>> response : responses) {
+            result.addAll(response.get());
+        }
+        return result;
+    }
+
+    /**
+     * Only the members of the smallest set are transferred, the other sets are probed for them with SMISMEMBER so each
+     * node returns a flag per candidate instead of its whole set.
+     */
+    private Set<String> gatherIntersection(String[] keys) {
+        List<Response<Long>> sizes = new ArrayList<>();
+        try (ClusterPipeline pipeline = cluster.pipelined()) {
+            for (String key : keys) {
+                sizes.add(pipeline.scard(key));
+            }
+            pipeline.sync();
+        }
+        int smallest = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (sizes.get(i).get() == 0) {
+                return new HashSet<>();
+            }
+            if (sizes.get(i).get() < sizes.get(smallest).get()) {
+                smallest = i;
+            }
+        }
+        List<String> candidates = new ArrayList<>(cluster.smembers(keys[smallest]));
+        if (keys.length == 1 || candidates.isEmpty()) {
+            return new HashSet<>(candidates);
+        }
+        boolean[] matches = new boolean[candidates.size()];
+        Arrays.fill(matches, true);
+        List<String[]> chunks = chunk(candidates.toArray(new String[0]), config.getRedisSaddChunkSize());
+        List<List<Response<List<Boolean>>>> responses = new ArrayList<>();
+        try (ClusterPipeline pipeline = cluster.pipelined()) {
+            for (int i = 0; i < keys.length; i++) {
+                if (i == smallest) {
+                    continue;
+                }
+                List<Response<List<Boolean>>> keyResponses = new ArrayList<>();
+                for (String[] chunk : chunks) {
+                    keyResponses.add(pipeline.smismember(keys[i], chunk));
+                }
+                responses.add(keyResponses);
+            }
+            pipeline.sync();
+        }
+        for (List<Response<List<Boolean>>> keyResponses : responses) {
+            int index = 0;
+            for (Response<List<Boolean>> response : keyResponses) {
+                for (Boolean match : response.get()) {
+                    matches[index] &= match;
+                    index++;
+                }
+            }
+        }
+        Set<String> result = new HashSet<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            if (matches[i]) {
+                result.add(candidates.get(i));
+            }
+        }
+        return result;
+    }
+
+    private int replaceSet(String key, Set<String> members) {
+        try (ClusterPipeline pipeline = cluster.pipelined()) {
+            int commands = addMembers(pipeline, key, members.toArray(new String[0]), true,
+                    config.getRedisDerivedSetTtl());
+            pipeline.sync();
+            return commands;
+        }
+    }
+
+    /**
+     * Adds the members in chunks, each chunk refreshing the expiry of the set. With replace the set is cleared by the
+     * first chunk, an empty member list then only deletes the set.
+     *
+     * @return the number of commands added to the pipeline
+     */
+    private int addMembers(PipelineBase pipeline, String key, String[] members, boolean replace, int ttlSeconds) {
+        int chunkSize = config.getRedisSaddChunkSize() > 0
+                ? Math.min(config.getRedisSaddChunkSize(), SCRIPT_MAX_MEMBERS) : SCRIPT_MAX_MEMBERS;
+        List<String[]> chunks = chunk(members, chunkSize);
+        if (chunks.isEmpty()) {
+            chunks.add(new String[0]);
+        }
+        for (int i = 0; i < chunks.size(); i++) {
+            List<String> args = new ArrayList<>(chunks.get(i).length + 2);
+            args.add(replace && i == 0 ? "1" : "0");
+            args.add(String.valueOf(ttlSeconds));
+            args.addAll(Arrays.asList(chunks.get(i)));
+            pipeline.eval(ADD_MEMBERS_SCRIPT, List.of(key), args);
+        }
+        return chunks.size();
+    }
+
     private boolean connect() {
         if (!config.isRedisEnabled()) {
             logger.warn("Redis not connected, connection disabled in Bento configuration");
@@ -267,14 +1000,29 @@ public class RedisService {
                 return false;
             }
 
+            int connectTimeout = config.getRedisConnectTimeout();
+            int socketTimeout = config.getRedisSocketTimeout();
             if (useCluster) {
-                cluster = new JedisCluster(new HostAndPort(host, port));
+                cluster = new JedisCluster(new HostAndPort(host, port), connectTimeout, socketTimeout,
+                        CLUSTER_MAX_ATTEMPTS, configurePool(new ConnectionPoolConfig()));
             } else {
-                pool = new JedisPool(host, port);
+                pool = new JedisPool(configurePool(new JedisPoolConfig()), host, port, connectTimeout, socketTimeout,
+                        null, Protocol.DEFAULT_DATABASE, null);
+            }
+            ReplicaRouter.ReadPreference readPreference = getReadPreference();
+            if (readPreference != ReplicaRouter.ReadPreference.PRIMARY) {
+                // Replicas are found and checked by the health check, reads go to the primary until then
+                replicaRouter = new ReplicaRouter(readPreference, useCluster, DefaultJedisClientConfig.builder()
+                        .connectionTimeoutMillis(connectTimeout).socketTimeoutMillis(socketTimeout).build(),
+                        configurePool(new JedisPoolConfig()));
             }
             return true;
         } catch (JedisException e) {
             logger.error(e);
+            if (null != replicaRouter) {
+                replicaRouter.close();
+                replicaRouter = null;
+            }
             if (null != pool) {
                 pool.close();
                 pool = null;
@@ -287,6 +1035,163 @@ public class RedisService {
         }
     }
 
+    private ReplicaRouter.ReadPreference getReadPreference() {
+        try {
+            return ReplicaRouter.ReadPreference.valueOf(config.getRedisReadPreference().trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid redis.read_preference " + config.getRedisReadPreference() + ", reading from primary");
+            return ReplicaRouter.ReadPreference.PRIMARY;
+        }
+    }
+
+    private <T extends GenericObjectPoolConfig<?>> T configurePool(T poolConfig) {
+        poolConfig.setMaxTotal(config.getRedisPoolMaxTotal());
+        poolConfig.setMaxIdle(config.getRedisPoolMaxTotal());
+        poolConfig.setMinIdle(config.getRedisPoolMinIdle());
+        poolConfig.setMaxWait(Duration.ofMillis(config.getRedisPoolMaxWait()));
+        // Idle connections are validated in the background instead of on every borrow
+        poolConfig.setTestWhileIdle(true);
+        poolConfig.setTimeBetweenEvictionRuns(Duration.ofSeconds(30));
+        poolConfig.setJmxEnabled(false);
+        return poolConfig;
+    }
+
+    private void checkHealth() {
+        try {
+            long latency = measurePing();
+            if (!healthy) {
+                logger.info("Redis healthy again");
+            }
+            healthy = true;
+            if (null != replicaRouter) {
+                refreshReplicas();
+                replicaRouter.checkHealth(latency);
+            }
+        } catch (RuntimeException e) {
+            if (healthy) {
+                logger.warn("Redis health check failed: " + e.getMessage());
+            }
+            healthy = false;
+        }
+        if (healthy) {
+            logger.debug("Redis pool: " + getPoolMetrics());
+        }
+    }
+
+    private long measurePing() {
+        long start = System.nanoTime();
+        ping();
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Standalone replicas come from the configuration, cluster replicas from the slot map of any node.
+     */
+    private void refreshReplicas() {
+        if (!useCluster) {
+            List<HostAndPort> addresses = new ArrayList<>();
+            for (String address : config.getRedisReplicas().split(",")) {
+                if (!address.isBlank()) {
+                    addresses.add(HostAndPort.from(address.trim()));
+                }
+            }
+            replicaRouter.setReplicas(addresses);
+            return;
+        }
+        for (ConnectionPool nodePool : cluster.getClusterNodes().values()) {
+            try (Jedis jedis = new Jedis(nodePool.getResource())) {
+                replicaRouter.setClusterSlots(jedis.clusterSlots());
+                return;
+            } catch (JedisException e) {
+                logger.debug("Cluster slots not read from node: " + e.getMessage());
+            }
+        }
+        logger.warn("Redis cluster replicas not refreshed, no node answered");
+    }
+
+    private <T> T read(String key, Function<JedisCommands, T> command) {
+        Supplier<T> primary = () -> {
+            if (useCluster) {
+                return command.apply(cluster);
+            }
+            try (Jedis jedis = pool.getResource()) {
+                return command.apply(jedis);
+            }
+        };
+        if (null == replicaRouter) {
+            return primary.get();
+        }
+        int slot = useCluster ? JedisClusterCRC16.getSlot(key) : ReplicaRouter.ANY_SLOT;
+        return replicaRouter.read(slot, command, primary);
+    }
+
+    /**
+     * Compresses values above the configured size. Compressed values start with a marker byte, values without it are
+     * stored as they are, so entries written with and without compression can be read side by side.
+     */
+    private byte[] compress(String key, byte[] value) {
+        int threshold = config.getRedisCompressionThreshold();
+        boolean marked = value.length > 0 && value[0] == COMPRESSED_MARKER;
+        if (!marked && (threshold < 0 || value.length < threshold)) {
+            return value;
+        }
+        long start = System.nanoTime();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(value.length / 4 + 16);
+        baos.write(COMPRESSED_MARKER);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(baos, new Deflater(Deflater.BEST_SPEED))) {
+            out.write(value);
+        } catch (IOException e) {
+            logger.error(e);
+            return value;
+        }
+        // A value that starts with the marker byte is always stored compressed so it can't be misread
+        byte[] compressed = baos.toByteArray();
+        boolean smaller = compressed.length < value.length;
+        getCompressionStats(key).recordCompression(value.length, smaller || marked ? compressed.length : value.length,
+                System.nanoTime() - start);
+        return smaller || marked ? compressed : value;
+    }
+
+    private byte[] decompress(String key, byte[] value) {
+        if (value == null || value.length == 0 || value[0] != COMPRESSED_MARKER) {
+            return value;
+        }
+        long start = System.nanoTime();
+        try (InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(value, 1, value.length - 1))) {
+            byte[] data = in.readAllBytes();
+            getCompressionStats(key).recordDecompression(System.nanoTime() - start);
+            return data;
+        } catch (IOException e) {
+            logger.warn("Unreadable compressed cache entry " + key + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private CompressionStats getCompressionStats(String key) {
+        // Keyed by the first segment of the key, and only for the configured namespaces so the map stays small
+        int end = key.indexOf(':');
+        String namespace = end > 0 ? key.substring(0, end) : key;
+        return compressionStats.computeIfAbsent(compressionStatsNamespaces.contains(namespace) ? namespace : OTHER_KEYS,
+                k -> new CompressionStats());
+    }
+
+    private void set(PipelineBase pipeline, byte[] key, byte[] value, int ttlSeconds) {
+        if (ttlSeconds > 0) {
+            pipeline.setex(key, ttlSeconds, value);
+        } else {
+            pipeline.set(key, value);
+        }
+    }
+
+    private List<String[]> chunk(String[] values, int chunkSize) {
+        List<String[]> chunks = new ArrayList<>();
+        int size = chunkSize > 0 ? chunkSize : values.length;
+        for (int from = 0; from < values.length; from += size) {
+            chunks.add(Arrays.copyOfRange(values, from, Math.min(values.length, from + size)));
+        }
+        return chunks;
+    }
+
     private String[] formatKeys(String[] keys) {
         for (int i = 0; i < keys.length; i++) {
             keys[i] = formatKey(keys[i]);
@@ -309,11 +1214,82 @@ public class RedisService {
     }
 
     private String addSetHashTag(String key){
+        if (config.isRedisSetShardingEnabled()) {
+            // Hash tag on the set's own key, sets are spread over every slot
+            return "set.{"+key+"}";
+        }
         return "{set}."+key;
     }
 
+    /**
+     * Hands the messages of every channel to its listeners, a failing listener doesn't stop the others.
+     */
+    private class Subscriber extends JedisPubSub {
+        private final Set<String> requested = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public void onMessage(String channel, String message) {
+            for (Consumer<String> listener : listeners.getOrDefault(channel, List.of())) {
+                try {
+                    listener.accept(message);
+                } catch (RuntimeException e) {
+                    logger.error("Redis message listener of " + channel + " failed", e);
+                }
+            }
+        }
+
+        @Override
+        public void onSubscribe(String channel, int subscribedChannels) {
+            // Channels added while the connection was being made are subscribed to once it is ready
+            subscribeMissing();
+        }
+
+        private void subscribeMissing() {
+            synchronized (listeners) {
+                for (String channel : listeners.keySet()) {
+                    if (requested.add(channel)) {
+                        subscribe(channel);
+                    }
+                }
+            }
+        }
+    }
+
+    private static class CompressionStats {
+        private final LongAdder compressed = new LongAdder();
+        private final LongAdder rawBytes = new LongAdder();
+        private final LongAdder storedBytes = new LongAdder();
+        private final LongAdder compressNanos = new LongAdder();
+        private final LongAdder decompressed = new LongAdder();
+        private final LongAdder decompressNanos = new LongAdder();
+
+        private void recordCompression(int raw, int stored, long nanos) {
+            compressed.increment();
+            rawBytes.add(raw);
+            storedBytes.add(stored);
+            compressNanos.add(nanos);
+        }
+
+        private void recordDecompression(long nanos) {
+            decompressed.increment();
+            decompressNanos.add(nanos);
+        }
+
+        private Map<String, Object> getMetrics() {
+            Map<String, Object> metrics = new LinkedHashMap<>();
+            long raw = rawBytes.sum();
+            metrics.put("compressedValues", compressed.sum());
+            metrics.put("rawBytes", raw);
+            metrics.put("storedBytes", storedBytes.sum());
+            metrics.put("ratio", raw > 0 ? (double) storedBytes.sum() / raw : 1.0);
+            metrics.put("compressMillis", compressNanos.sum() / 1_000_000);
+            metrics.put("decompressedValues", decompressed.sum());
+            metrics.put("decompressMillis", decompressNanos.sum() / 1_000_000);
+            return metrics;
+        }
+    }
+
     private enum RETURNTYPE {
-        VALUE,
         SET,
         UNION,
         INTERSECTION
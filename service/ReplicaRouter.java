@@ -0,0 +1,309 @@
+package gov.nih.nci.bento.service;
+
+import org.apache.commons.pool2.BasePooledObjectFactory;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisClientConfig;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Routes cache reads to Redis replicas. Standalone replicas are configured, cluster replicas are discovered from
+ * CLUSTER SLOTS and their connections are switched to READONLY when opened. A replica that fails a read is skipped
+ * until the next health check succeeds on it, and the read is retried on the primary. Replicas may lag behind their
+ * primary, a value not replicated yet is read as a miss.
+ */
+public class ReplicaRouter {
+    private static final Logger logger = LogManager.getLogger(ReplicaRouter.class);
+    private static final int SLOTS = 16384;
+    // Reads that selected a replica before it left the topology may still be using its pool
+    private static final long RETIRED_GRACE_MILLIS = 30000;
+    // Standalone replicas serve every key
+    static final int ANY_SLOT = -1;
+
+    private final ReadPreference preference;
+    private final boolean readOnly;
+    private final JedisClientConfig clientConfig;
+    private final GenericObjectPoolConfig<Jedis> poolConfig;
+    private final Map<HostAndPort, Replica> replicas = new ConcurrentHashMap<>();
+    private final Map<Replica, Long> retired = new ConcurrentHashMap<>();
+    private volatile List<Replica> standaloneReplicas = List.of();
+    private volatile List<List<Replica>> slotReplicas = List.of();
+    private volatile long primaryLatencyNanos = Long.MAX_VALUE;
+    private final AtomicInteger next = new AtomicInteger();
+    private final LongAdder primaryReads = new LongAdder();
+
+    public ReplicaRouter(ReadPreference preference, boolean readOnly, JedisClientConfig clientConfig,
+            GenericObjectPoolConfig<Jedis> poolConfig) {
+        this.preference = preference;
+        this.readOnly = readOnly;
+        this.clientConfig = clientConfig;
+        this.poolConfig = poolConfig;
+    }
+
+    public void setReplicas(List<HostAndPort> addresses) {
+        List<Replica> selected = new ArrayList<>();
+        addresses.forEach(address -> selected.add(replicas.computeIfAbsent(address, Replica::new)));
+        standaloneReplicas = selected;
+        retire(new HashSet<>(addresses));
+    }
+
+    /**
+     * Updates the replicas of every slot from the reply of CLUSTER SLOTS, replicas that left the cluster are closed
+     * once the reads still using them had time to finish.
+     */
+    public void setClusterSlots(List<Object> clusterSlots) {
+        List<List<Replica>> slots = new ArrayList<>(SLOTS);
+        for (int i = 0; i < SLOTS; i++) {
+            slots.add(List.of());
+        }
+        Set<HostAndPort> seen = new HashSet<>();
+        for (Object entry : clusterSlots) {
+            List<Object> range = (List<Object>) entry;
+            // start, end, primary, then one entry per replica
+            List<Replica> rangeReplicas = new ArrayList<>();
+            for (int i = 3; i < range.size(); i++) {
+                List<Object> node = (List<Object>) range.get(i);
+                String host = new String((byte[]) node.get(0), StandardCharsets.UTF_8);
+                if (host.isEmpty()) {
+                    continue;
+                }
+                HostAndPort address = new HostAndPort(host, ((Long) node.get(1)).intValue());
+                seen.add(address);
+                rangeReplicas.add(replicas.computeIfAbsent(address, Replica::new));
+            }
+            for (int slot = ((Long) range.get(0)).intValue(); slot <= ((Long) range.get(1)).intValue(); slot++) {
+                slots.set(slot, rangeReplicas);
+            }
+        }
+        slotReplicas = slots;
+        retire(seen);
+    }
+
+    /**
+     * Runs the read on a replica of the slot when the read preference selects one, and on the primary otherwise or
+     * when the replica fails.
+     */
+    public <T> T read(int slot, Function<? super Jedis, T> replicaRead, Supplier<T> primaryRead) {
+        Replica replica = select(slot);
+        if (null != replica) {
+            try (Jedis jedis = replica.pool.getResource()) {
+                T result = replicaRead.apply(jedis);
+                replica.reads.increment();
+                return result;
+            } catch (JedisException e) {
+                replica.fail(e);
+            }
+        }
+        primaryReads.increment();
+        return primaryRead.get();
+    }
+
+    /**
+     * MGETs the keys of each slot on a replica, with one pipeline per replica. Only the slots that could be read are
+     * returned, the others are left to the primaries.
+     */
+    public Map<Integer, List<byte[]>> mget(Map<Integer, byte[][]> keysBySlot) {
+        Map<Replica, List<Integer>> slotsByReplica = new HashMap<>();
+        keysBySlot.keySet().forEach(slot -> {
+            Replica replica = select(slot);
+            if (null != replica) {
+                slotsByReplica.computeIfAbsent(replica, k -> new ArrayList<>()).add(slot);
+            }
+        });
+        Map<Integer, List<byte[]>> values = new HashMap<>();
+        slotsByReplica.forEach((replica, slots) -> {
+            Map<Integer, Response<List<byte[]>>> responses = new HashMap<>();
+            try (Jedis jedis = replica.pool.getResource(); Pipeline pipeline = jedis.pipelined()) {
+                for (Integer slot : slots) {
+                    responses.put(slot, pipeline.mget(keysBySlot.get(slot)));
+                }
+                pipeline.sync();
+                responses.forEach((slot, response) -> values.put(slot, response.get()));
+                replica.reads.add(slots.size());
+            } catch (JedisException e) {
+                replica.fail(e);
+            }
+        });
+        primaryReads.add(keysBySlot.size() - values.size());
+        return values;
+    }
+
+    /**
+     * Pings every replica, a replica is used again once it answers. The primary latency is measured by the caller.
+     */
+    public void checkHealth(long primaryLatencyNanos) {
+        this.primaryLatencyNanos = primaryLatencyNanos;
+        for (Replica replica : replicas.values()) {
+            long start = System.nanoTime();
+            try (Jedis jedis = replica.pool.getResource()) {
+                jedis.ping();
+                replica.latencyNanos = System.nanoTime() - start;
+                if (!replica.healthy) {
+                    logger.info("Redis replica " + replica.address + " healthy again");
+                }
+                replica.healthy = true;
+            } catch (JedisException e) {
+                replica.fail(e);
+            }
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("readPreference", preference.name());
+        metrics.put("primaryReads", primaryReads.sum());
+        Map<String, Object> nodes = new LinkedHashMap<>();
+        replicas.values().forEach(replica -> {
+            Map<String, Object> node = new LinkedHashMap<>();
+            node.put("healthy", replica.healthy);
+            node.put("latencyMicros", replica.latencyNanos == Long.MAX_VALUE ? null : replica.latencyNanos / 1000);
+            node.put("reads", replica.reads.sum());
+            node.put("failures", replica.failures.sum());
+            node.put("active", replica.pool.getNumActive());
+            node.put("idle", replica.pool.getNumIdle());
+            nodes.put(replica.address.toString(), node);
+        });
+        metrics.put("replicas", nodes);
+        return metrics;
+    }
+
+    public void close() {
+        replicas.values().forEach(replica -> replica.pool.close());
+        replicas.clear();
+        retired.keySet().forEach(replica -> replica.pool.close());
+        retired.clear();
+    }
+
+    /**
+     * Takes the replicas that are no longer selected out of rotation, and closes the pools retired by earlier refreshes
+     * once the grace period has passed.
+     */
+    private void retire(Set<HostAndPort> current) {
+        long now = System.currentTimeMillis();
+        replicas.values().removeIf(replica -> {
+            if (current.contains(replica.address)) {
+                return false;
+            }
+            retired.put(replica, now);
+            return true;
+        });
+        retired.entrySet().removeIf(entry -> {
+            if (now - entry.getValue() < RETIRED_GRACE_MILLIS) {
+                return false;
+            }
+            entry.getKey().pool.close();
+            return true;
+        });
+    }
+
+    private Replica select(int slot) {
+        List<Replica> candidates = slot == ANY_SLOT ? standaloneReplicas : slotReplicas.isEmpty()
+                ? List.of() : slotReplicas.get(slot);
+        List<Replica> healthy = new ArrayList<>(candidates.size());
+        for (Replica candidate : candidates) {
+            if (candidate.healthy) {
+                healthy.add(candidate);
+            }
+        }
+        if (healthy.isEmpty()) {
+            return null;
+        }
+        if (preference == ReadPreference.NEAREST) {
+            Replica nearest = healthy.get(0);
+            for (Replica candidate : healthy) {
+                if (candidate.latencyNanos < nearest.latencyNanos) {
+                    nearest = candidate;
+                }
+            }
+            return nearest.latencyNanos < primaryLatencyNanos ? nearest : null;
+        }
+        return healthy.get(Math.floorMod(next.getAndIncrement(), healthy.size()));
+    }
+
+    private class Replica {
+        private final HostAndPort address;
+        private final JedisPool pool;
+        private final LongAdder reads = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private volatile boolean healthy = true;
+        private volatile long latencyNanos = Long.MAX_VALUE;
+
+        private Replica(HostAndPort address) {
+            this.address = address;
+            this.pool = new JedisPool(poolConfig, new ReplicaConnectionFactory(address));
+        }
+
+        private void fail(JedisException e) {
+            failures.increment();
+            if (healthy) {
+                logger.warn("Redis replica " + address + " failed, reading from the primary: " + e.getMessage());
+            }
+            healthy = false;
+        }
+    }
+
+    private class ReplicaConnectionFactory extends BasePooledObjectFactory<Jedis> {
+        private final HostAndPort address;
+
+        private ReplicaConnectionFactory(HostAndPort address) {
+            this.address = address;
+        }
+
+        @Override
+        public Jedis create() {
+            Jedis jedis = new Jedis(address, clientConfig);
+            if (readOnly) {
+                // Cluster replicas redirect reads to the primary unless the connection is read only
+                jedis.readonly();
+            }
+            return jedis;
+        }
+
+        @Override
+        public PooledObject<Jedis> wrap(Jedis jedis) {
+            return new DefaultPooledObject<>(jedis);
+        }
+
+        @Override
+        public void destroyObject(PooledObject<Jedis> pooledObject) {
+            pooledObject.getObject().disconnect();
+        }
+
+        @Override
+        public boolean validateObject(PooledObject<Jedis> pooledObject) {
+            try {
+                return "PONG".equals(pooledObject.getObject().ping());
+            } catch (JedisException e) {
+                return false;
+            }
+        }
+    }
+
+    public enum ReadPreference {
+        PRIMARY,
+        REPLICA_PREFERRED,
+        NEAREST
+    }
+}
@@ -0,0 +1,171 @@
+package gov.nih.nci.bento.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.BitSet;
+
+/**
+ * Sparse encoding of ID bitmaps, in the spirit of Roaring bitmaps. The int space is split in chunks of 65536 values and
+ * every non empty chunk is written as the smallest of a sorted array of its values, a list of runs, or a plain bitmap,
+ * so a small group is a few bytes whatever the largest int of the dictionary is.
+ */
+final class SparseBitmapCodec {
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int BITMAP_BYTES = CHUNK_SIZE / 8;
+    private static final int ARRAY = 0;
+    private static final int RUNS = 1;
+    private static final int BITMAP = 2;
+
+    private SparseBitmapCodec() {
+    }
+
+    static void encode(DataOutputStream out, BitSet bitmap) throws IOException {
+        int chunks = 0;
+        for (int i = bitmap.nextSetBit(0); i >= 0; i = nextChunk(bitmap, i)) {
+            chunks++;
+        }
+        writeVarInt(out, chunks);
+        int previousChunk = 0;
+        for (int i = bitmap.nextSetBit(0); i >= 0; i = nextChunk(bitmap, i)) {
+            int chunk = i >>> CHUNK_BITS;
+            writeVarInt(out, chunk - previousChunk);
+            previousChunk = chunk;
+            BitSet values = chunkValues(bitmap, chunk);
+            byte[] array = encodeArray(values);
+            byte[] runs = encodeRuns(values);
+            if (array.length <= runs.length && array.length <= BITMAP_BYTES) {
+                out.write(ARRAY);
+                out.write(array);
+            } else if (runs.length <= BITMAP_BYTES) {
+                out.write(RUNS);
+                out.write(runs);
+            } else {
+                out.write(BITMAP);
+                byte[] bytes = values.toByteArray();
+                out.write(bytes);
+                out.write(new byte[BITMAP_BYTES - bytes.length]);
+            }
+        }
+    }
+
+    static BitSet decode(DataInputStream in) throws IOException {
+        BitSet bitmap = new BitSet();
+        int chunks = readVarInt(in);
+        int chunk = 0;
+        for (int c = 0; c < chunks; c++) {
+            chunk += readVarInt(in);
+            int base = chunk << CHUNK_BITS;
+            int type = in.readUnsignedByte();
+            if (type == ARRAY) {
+                int count = readCount(in);
+                int value = -1;
+                for (int i = 0; i < count; i++) {
+                    value += readVarInt(in) + 1;
+                    bitmap.set(base + checkLow(value));
+                }
+            } else if (type == RUNS) {
+                int count = readCount(in);
+                int end = 0;
+                for (int i = 0; i < count; i++) {
+                    int start = end + readVarInt(in);
+                    end = start + readVarInt(in) + 1;
+                    checkLow(end - 1);
+                    bitmap.set(base + start, base + end);
+                }
+            } else if (type == BITMAP) {
+                byte[] bytes = new byte[BITMAP_BYTES];
+                in.readFully(bytes);
+                BitSet values = BitSet.valueOf(bytes);
+                for (int i = values.nextSetBit(0); i >= 0; i = values.nextSetBit(i + 1)) {
+                    bitmap.set(base + i);
+                }
+            } else {
+                throw new IOException("Invalid bitmap container type " + type);
+            }
+        }
+        return bitmap;
+    }
+
+    private static byte[] encodeArray(BitSet values) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(baos);
+        writeVarInt(out, values.cardinality());
+        int previous = -1;
+        for (int i = values.nextSetBit(0); i >= 0; i = values.nextSetBit(i + 1)) {
+            writeVarInt(out, i - previous - 1);
+            previous = i;
+        }
+        return baos.toByteArray();
+    }
+
+    private static byte[] encodeRuns(BitSet values) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(baos);
+        int runs = 0;
+        for (int start = values.nextSetBit(0); start >= 0; start = values.nextSetBit(values.nextClearBit(start))) {
+            runs++;
+        }
+        writeVarInt(out, runs);
+        int end = 0;
+        for (int start = values.nextSetBit(0); start >= 0; start = values.nextSetBit(end)) {
+            int runEnd = values.nextClearBit(start);
+            writeVarInt(out, start - end);
+            writeVarInt(out, runEnd - start - 1);
+            end = runEnd;
+        }
+        return baos.toByteArray();
+    }
+
+    private static int nextChunk(BitSet bitmap, int value) {
+        int end = ((value >>> CHUNK_BITS) + 1) << CHUNK_BITS;
+        // The last chunk ends past the int range, the end wraps around
+        return end < 0 ? -1 : bitmap.nextSetBit(end);
+    }
+
+    private static BitSet chunkValues(BitSet bitmap, int chunk) {
+        int start = chunk << CHUNK_BITS;
+        // Integer.MAX_VALUE itself can't be held by a BitSet, the last chunk stops short of it
+        return bitmap.get(start, start + CHUNK_SIZE > 0 ? start + CHUNK_SIZE : Integer.MAX_VALUE);
+    }
+
+    private static int readCount(DataInputStream in) throws IOException {
+        int count = readVarInt(in);
+        if (count > CHUNK_SIZE) {
+            throw new IOException("Invalid bitmap container size " + count);
+        }
+        return count;
+    }
+
+    private static int checkLow(int value) throws IOException {
+        if (value < 0 || value >= CHUNK_SIZE) {
+            throw new IOException("Invalid bitmap value " + value);
+        }
+        return value;
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    throw new IOException("Invalid bitmap number " + value);
+                }
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length number");
+    }
+}
@@ -0,0 +1,24 @@
+package gov.nih.nci.bento.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports OUT_OF_SERVICE until warm-up completes or times out, with the warm-up status as details. The indicator is
+ * named warmUp, it holds readiness back once it is in the readiness group:
+ * management.endpoint.health.group.readiness.include=readinessState,warmUp
+ */
+@Component("warmUpHealthIndicator")
+public class WarmUpHealthIndicator implements HealthIndicator {
+
+    @Autowired
+    private WarmUpService warmUpService;
+
+    @Override
+    public Health health() {
+        Health.Builder health = warmUpService.isReady() ? Health.up() : Health.outOfService();
+        return health.withDetails(warmUpService.getStatus()).build();
+    }
+}
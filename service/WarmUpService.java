@@ -0,0 +1,220 @@
+package gov.nih.nci.bento.service;
+
+import gov.nih.nci.bento.graphql.BentoGraphQL;
+import gov.nih.nci.bento.model.ConfigurationDAO;
+import graphql.ExecutionInput;
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.language.Document;
+import graphql.language.OperationDefinition;
+import graphql.parser.InvalidSyntaxException;
+import graphql.parser.Parser;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.opensearch.client.Request;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Service;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Replays the queries of test.queries_file through both GraphQL instances once the application has started, so the
+ * Redis cache, the Neo4j page cache, the connection pools and the JIT are warm before the first user request. Only
+ * query operations are replayed, mutations in the file are skipped. {@link WarmUpHealthIndicator} keeps the application
+ * out of service until warm-up completes or times out.
+ */
+@Service("warmUpService")
+public class WarmUpService {
+    private static final Logger logger = LogManager.getLogger(WarmUpService.class);
+
+    @Autowired
+    private ConfigurationDAO config;
+    @Autowired
+    private BentoGraphQL bentoGraphQL;
+    @Autowired
+    private RedisService redisService;
+    @Autowired
+    private Neo4jService neo4jService;
+    @Autowired
+    private ESService esService;
+
+    private final Map<String, Object> status = new LinkedHashMap<>();
+    private volatile WarmUpState state = WarmUpState.PENDING;
+    private volatile boolean stopped;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady(ApplicationReadyEvent event) {
+        if (!config.isWarmUpEnabled()) {
+            state = WarmUpState.DISABLED;
+            return;
+        }
+        Thread thread = new Thread(this::run, "warm-up");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public boolean isReady() {
+        return state != WarmUpState.PENDING && state != WarmUpState.RUNNING;
+    }
+
+    public synchronized Map<String, Object> getStatus() {
+        Map<String, Object> result = new LinkedHashMap<>(status);
+        result.put("state", state.name());
+        return result;
+    }
+
+    private void run() {
+        state = WarmUpState.RUNNING;
+        long start = System.currentTimeMillis();
+        CompletableFuture<Void> warmUp = CompletableFuture.runAsync(this::warmUp, bentoGraphQL.getExecutor());
+        try {
+            warmUp.get(config.getWarmUpTimeoutSeconds(), TimeUnit.SECONDS);
+            state = WarmUpState.COMPLETED;
+        } catch (TimeoutException e) {
+            logger.warn("Warm-up timed out, accepting traffic");
+            // Cancelling a CompletableFuture doesn't interrupt the task, the replay loop checks the flag instead
+            stopped = true;
+            state = WarmUpState.TIMED_OUT;
+        } catch (ExecutionException e) {
+            logger.error("Warm-up failed, accepting traffic", e.getCause());
+            state = WarmUpState.FAILED;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stopped = true;
+            state = WarmUpState.FAILED;
+        }
+        putStatus("durationMillis", System.currentTimeMillis() - start);
+        logger.info(String.format("Warm-up %s in %d ms", state.name().toLowerCase(), System.currentTimeMillis() - start));
+    }
+
+    private void warmUp() {
+        Map<String, Object> pools = new LinkedHashMap<>();
+        pools.put("neo4j", warmUpPool(() -> neo4jService.warmUp(config.getWarmUpNeo4jConnections())));
+        pools.put("redis", redisService.isInitialized() ? warmUpPool(redisService::ping) : "disabled");
+        pools.put("opensearch", config.isEsFilterEnabled()
+                ? warmUpPool(() -> esService.send(new Request("GET", "/"))) : "disabled");
+        putStatus("pools", pools);
+
+        List<Map<String, Object>> queries = config.isAllowGraphQLQuery() ? readQueries() : List.of();
+        putStatus("queries", queries.size());
+        int executed = 0;
+        int failed = 0;
+        for (int i = 0; i < config.getWarmUpIterations(); i++) {
+            for (Map<String, Object> query : queries) {
+                for (GraphQL graphQL : List.of(bentoGraphQL.getPublicGraphQL(), bentoGraphQL.getPrivateGraphQL())) {
+                    if (stopped || Thread.currentThread().isInterrupted()) {
+                        return;
+                    }
+                    failed += execute(graphQL, query) ? 0 : 1;
+                    executed++;
+                }
+            }
+            putStatus("executed", executed);
+            putStatus("failed", failed);
+        }
+    }
+
+    private String warmUpPool(WarmUpTask task) {
+        try {
+            task.run();
+            return "ok";
+        } catch (Exception e) {
+            logger.warn("Connection warm-up failed: " + e.getMessage());
+            return "failed: " + e.getMessage();
+        }
+    }
+
+    private boolean execute(GraphQL graphQL, Map<String, Object> query) {
+        try {
+            ExecutionInput input = ExecutionInput.newExecutionInput()
+                    .query((String) query.get("query"))
+                    .variables((Map<String, Object>) query.getOrDefault("variables", Map.of()))
+                    .dataLoaderRegistry(bentoGraphQL.newDataLoaderRegistry(graphQL))
+                    .build();
+            ExecutionResult result = graphQL.execute(input);
+            // Queries that don't exist in one of the schemas fail validation, that is expected for public queries
+            return result.getErrors().isEmpty();
+        } catch (Exception e) {
+            logger.debug("Warm-up query failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private List<Map<String, Object>> readQueries() {
+        List<Map<String, Object>> queries = new ArrayList<>();
+        String file = config.getTestQueriesFile();
+        if (file == null || file.isBlank()) {
+            return queries;
+        }
+        ClassPathResource resource = new ClassPathResource(file);
+        try (InputStream inputStream = resource.getInputStream()) {
+            // A list of queries, each either the query text or a map with query and variables
+            Object entries = new Yaml().load(inputStream);
+            if (entries instanceof List) {
+                for (Object entry : (List<?>) entries) {
+                    Map<String, Object> query = null;
+                    if (entry instanceof String) {
+                        query = Map.of("query", entry);
+                    } else if (entry instanceof Map && ((Map<?, ?>) entry).get("query") instanceof String) {
+                        query = (Map<String, Object>) entry;
+                    }
+                    if (query != null && isReadOnly((String) query.get("query"))) {
+                        queries.add(query);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Warm-up queries not loaded from " + file + ": " + e.getMessage());
+        }
+        return queries;
+    }
+
+    /**
+     * Whether every operation of the document is a query, warm-up must never write to the database.
+     */
+    private boolean isReadOnly(String query) {
+        try {
+            Document document = Parser.parse(query);
+            List<OperationDefinition> operations = document.getDefinitionsOfType(OperationDefinition.class);
+            if (!operations.isEmpty() && operations.stream()
+                    .allMatch(operation -> operation.getOperation() == OperationDefinition.Operation.QUERY)) {
+                return true;
+            }
+            logger.warn("Warm-up skips a document that isn't a query");
+        } catch (InvalidSyntaxException e) {
+            logger.warn("Warm-up skips an invalid query: " + e.getMessage());
+        }
+        return false;
+    }
+
+    private synchronized void putStatus(String key, Object value) {
+        status.put(key, value);
+    }
+
+    @FunctionalInterface
+    private interface WarmUpTask {
+        void run() throws Exception;
+    }
+
+    private enum WarmUpState {
+        DISABLED,
+        PENDING,
+        RUNNING,
+        COMPLETED,
+        TIMED_OUT,
+        FAILED
+    }
+}
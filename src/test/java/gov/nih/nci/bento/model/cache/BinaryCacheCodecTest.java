@@ -0,0 +1,99 @@
+package gov.nih.nci.bento.model.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryCacheCodecTest {
+    private final JavaSerializationCodec javaCodec = new JavaSerializationCodec();
+    private final BinaryCacheCodec codec = new BinaryCacheCodec(javaCodec);
+
+    @Test
+    void roundTripsResultTrees() throws IOException {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", "SUBJ-1");
+        row.put("age", 42L);
+        row.put("count", 7);
+        row.put("min", Long.MIN_VALUE);
+        row.put("rate", -0.5);
+        row.put("alive", true);
+        row.put("deleted", false);
+        row.put("missing", null);
+        row.put("text", "na\u00efve \u00fcn\u00efcode \ud83e\uddec");
+        row.put("files", List.of("a", "b"));
+        row.put("diagnosed", LocalDate.of(2020, 1, 31));
+        List<Object> result = new ArrayList<>(CacheCodecBenchmark.createResult(20));
+        result.add(row);
+
+        assertEquals(result, codec.decode(codec.encode(result)));
+        assertNull(codec.decode(codec.encode(null)));
+    }
+
+    @Test
+    void roundTripsBytes() throws IOException {
+        byte[] bytes = {0, 1, (byte) 0xFF};
+        assertArrayEquals(bytes, (byte[]) codec.decode(codec.encode(bytes)));
+    }
+
+    @Test
+    void writesRepeatedKeysOnce() throws IOException {
+        String encoded = new String(codec.encode(CacheCodecBenchmark.createResult(100)), StandardCharsets.ISO_8859_1);
+        assertEquals(encoded.indexOf("study_acronym"), encoded.lastIndexOf("study_acronym"));
+    }
+
+    @Test
+    void decodesLegacyEntries() throws IOException {
+        List<Object> result = CacheCodecBenchmark.createResult(3);
+        assertEquals(result, codec.decode(javaCodec.encode(result)));
+    }
+
+    @Test
+    void rejectsTruncatedEntries() throws IOException {
+        byte[] data = codec.encode(CacheCodecBenchmark.createResult(5));
+        for (int length = 3; length < data.length; length += 7) {
+            byte[] truncated = Arrays.copyOf(data, length);
+            assertThrows(IOException.class, () -> codec.decode(truncated), "length " + length);
+        }
+    }
+
+    @Test
+    void rejectsLengthsBeyondTheEntry() {
+        // A list claiming Integer.MAX_VALUE elements must fail before anything is allocated for it
+        byte[] data = {(byte) BinaryCacheCodec.MAGIC, BinaryCacheCodec.VERSION, 0, 7,
+                (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07};
+        assertThrows(IOException.class, () -> codec.decode(data));
+    }
+
+    @Test
+    void rejectsUnknownVersions() {
+        byte[] data = {(byte) BinaryCacheCodec.MAGIC, BinaryCacheCodec.VERSION + 1, 0, 0};
+        assertThrows(IOException.class, () -> codec.decode(data));
+    }
+
+    @Test
+    void rejectsClassesOutsideTheAllowList() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject(new java.io.File("x"));
+        }
+        byte[] legacy = Base64.getEncoder().encode(baos.toByteArray());
+        assertThrows(IOException.class, () -> codec.decode(legacy));
+        assertThrows(IOException.class, () -> codec.decode(codec.encode(new java.io.File("x"))));
+    }
+}
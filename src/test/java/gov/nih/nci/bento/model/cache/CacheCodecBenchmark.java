@@ -0,0 +1,110 @@
+package gov.nih.nci.bento.model.cache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Encode and decode time of the binary cache codec against the Java serialization codec it replaces, on a synthetic
+ * result shaped like the rows of a listing query. The entry sizes, raw and deflated the way RedisService compresses
+ * large values, are printed once per run. Run with main, or with the JMH runner of the build.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheCodecBenchmark {
+    @Param({"10", "500"})
+    private int rows;
+
+    private final JavaSerializationCodec javaCodec = new JavaSerializationCodec();
+    private final BinaryCacheCodec binaryCodec = new BinaryCacheCodec(javaCodec);
+    private List<Object> result;
+    private byte[] javaEntry;
+    private byte[] binaryEntry;
+
+    @Setup
+    public void setUp() throws IOException {
+        result = createResult(rows);
+        javaEntry = javaCodec.encode(result);
+        binaryEntry = binaryCodec.encode(result);
+        System.out.printf("%n%d rows: java %d bytes (%d deflated), binary %d bytes (%d deflated)%n", rows,
+                javaEntry.length, deflate(javaEntry).length, binaryEntry.length, deflate(binaryEntry).length);
+    }
+
+    @Benchmark
+    public byte[] encodeJava() throws IOException {
+        return javaCodec.encode(result);
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() throws IOException {
+        return binaryCodec.encode(result);
+    }
+
+    @Benchmark
+    public Object decodeJava() throws IOException {
+        return javaCodec.decode(javaEntry);
+    }
+
+    @Benchmark
+    public Object decodeBinary() throws IOException {
+        return binaryCodec.decode(binaryEntry);
+    }
+
+    static List<Object> createResult(int rows) {
+        List<Object> result = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("subject_id", "SUBJ-" + (100000 + i));
+            row.put("program", "PROGRAM-" + (i % 4));
+            row.put("study_acronym", "STUDY-" + (i % 12));
+            row.put("diagnosis", i % 3 == 0 ? "Adenocarcinoma" : "Squamous cell carcinoma");
+            row.put("age_at_index", 20L + i % 60);
+            row.put("survival_rate", i / 7.0);
+            row.put("is_alive", i % 5 != 0);
+            row.put("files", List.of("file-" + i + "-a", "file-" + i + "-b"));
+            Map<String, Object> sample = new LinkedHashMap<>();
+            sample.put("sample_id", "SAMP-" + i);
+            sample.put("tissue_type", i % 2 == 0 ? "Tumor" : "Normal");
+            row.put("sample", sample);
+            result.add(row);
+        }
+        return result;
+    }
+
+    private static byte[] deflate(byte[] data) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DeflaterOutputStream out = new DeflaterOutputStream(baos, new Deflater(Deflater.BEST_SPEED))) {
+            out.write(data);
+        }
+        return baos.toByteArray();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CacheCodecBenchmark.class.getSimpleName()).build()).run();
+    }
+}
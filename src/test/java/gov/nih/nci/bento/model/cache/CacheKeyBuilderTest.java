@@ -0,0 +1,71 @@
+package gov.nih.nci.bento.model.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CacheKeyBuilderTest {
+    private static final String QUERY = "MATCH (n) RETURN n";
+
+    private final CacheKeyBuilder builder = new CacheKeyBuilder("neo4j");
+
+    @Test
+    void buildsNamespacedKeys() {
+        String key = builder.build(3, "subjects", QUERY, Map.of());
+        assertTrue(key.matches("neo4j:3:subjects:[0-9a-f]{64}"), key);
+    }
+
+    @Test
+    void ignoresParameterOrder() {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("a", 1);
+        params.put("b", "x");
+        Map<String, Object> reordered = new LinkedHashMap<>();
+        reordered.put("b", "x");
+        reordered.put("a", 1);
+        assertEquals(key(params), key(reordered));
+    }
+
+    @Test
+    void ignoresTheOrderOfInFilterValues() {
+        assertEquals(key(Map.of("filter", Map.of("id_in", List.of("a", "b")))),
+                key(Map.of("filter", Map.of("id_in", List.of("b", "a")))));
+        assertEquals(key(Map.of("ID_IN", List.of(2, 1))), key(Map.of("ID_IN", List.of(1, 2))));
+    }
+
+    @Test
+    void keepsTheOrderOfOtherLists() {
+        assertNotEquals(key(Map.of("order", List.of("a", "b"))), key(Map.of("order", List.of("b", "a"))));
+        // Lists of maps keep their order even in a filter
+        assertNotEquals(key(Map.of("id_in", List.of(Map.of("a", 1), Map.of("b", 2)))),
+                key(Map.of("id_in", List.of(Map.of("b", 2), Map.of("a", 1)))));
+    }
+
+    @Test
+    void normalisesNumbers() {
+        assertEquals(key(Map.of("first", 10)), key(Map.of("first", 10L)));
+        assertEquals(key(Map.of("rate", 0.5f)), key(Map.of("rate", 0.5)));
+        assertNotEquals(key(Map.of("first", 10)), key(Map.of("first", "10")));
+    }
+
+    @Test
+    void separatesGenerationsAndStatements() {
+        assertNotEquals(builder.build(1, "v", QUERY, Map.of()), builder.build(2, "v", QUERY, Map.of()));
+        assertNotEquals(builder.build(1, "v", QUERY, Map.of()), builder.build(1, "v", QUERY + " LIMIT 1", Map.of()));
+    }
+
+    @Test
+    void escapesStrings() {
+        assertNotEquals(key(Map.of("a", "x\",\"b\":\"y")), key(Map.of("a", "x", "b", "y")));
+    }
+
+    private String key(Map<String, Object> params) {
+        return builder.build(1, "v", QUERY, params);
+    }
+}
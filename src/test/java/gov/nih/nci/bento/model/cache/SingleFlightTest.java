@@ -0,0 +1,159 @@
+package gov.nih.nci.bento.model.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTest {
+    private static final int CALLERS = 8;
+
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    @Test
+    void coalescesConcurrentLoads() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS, runnable -> {
+            Thread thread = new Thread(runnable);
+            threads.add(thread);
+            return thread;
+        });
+        try {
+            List<Future<Object>> results = new ArrayList<>();
+            results.add(executor.submit(() -> singleFlight.execute("key", () -> {
+                loads.incrementAndGet();
+                started.countDown();
+                await(release);
+                return "value";
+            })));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            for (int i = 1; i < CALLERS; i++) {
+                results.add(executor.submit(() -> singleFlight.execute("key", () -> {
+                    loads.incrementAndGet();
+                    return "other";
+                })));
+            }
+            awaitWaiting(threads, CALLERS);
+            release.countDown();
+            for (Future<Object> result : results) {
+                assertEquals("value", result.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void loadsAgainOnceTheLoadCompleted() {
+        assertEquals(1, singleFlight.execute("key", () -> 1));
+        assertEquals(2, singleFlight.execute("key", () -> 2));
+    }
+
+    @Test
+    void propagatesExceptionsToTheCallerAndWaiters() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        IllegalStateException failure = new IllegalStateException("load failed");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Object> first = executor.submit(() -> singleFlight.execute("key", () -> {
+                started.countDown();
+                await(release);
+                throw failure;
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            CompletableFuture<Object> waiter = new CompletableFuture<>();
+            Thread waiterThread = new Thread(() -> {
+                try {
+                    waiter.complete(singleFlight.execute("key", () -> 1));
+                } catch (Throwable e) {
+                    waiter.completeExceptionally(e);
+                }
+            });
+            waiterThread.start();
+            awaitWaiting(List.of(waiterThread), 1);
+            release.countDown();
+            CompletionException waited = assertThrows(CompletionException.class, waiter::join);
+            assertSame(failure, waited.getCause());
+            Exception thrown = assertThrows(Exception.class, () -> first.get(5, TimeUnit.SECONDS));
+            assertSame(failure, thrown.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        // The failed load isn't kept
+        assertEquals(1, singleFlight.execute("key", () -> 1));
+    }
+
+    @Test
+    void propagatesErrors() {
+        assertThrows(AssertionError.class, () -> singleFlight.execute("key", () -> {
+            throw new AssertionError("boom");
+        }));
+        assertEquals(1, singleFlight.execute("key", () -> 1));
+    }
+
+    @Test
+    void sharesAsyncLoads() {
+        CompletableFuture<Object> pending = new CompletableFuture<>();
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<Object> first = singleFlight.executeAsync("key", () -> {
+            loads.incrementAndGet();
+            return pending;
+        });
+        CompletableFuture<Object> second = singleFlight.executeAsync("key", () -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture("other");
+        });
+        pending.complete("value");
+        assertEquals("value", first.join());
+        assertEquals("value", second.join());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void failsAsyncLoadsWhenTheLoaderThrows() {
+        CompletableFuture<Object> future = singleFlight.executeAsync("key", () -> {
+            throw new IllegalStateException("no session");
+        });
+        assertThrows(CompletionException.class, future::join);
+        assertEquals("value", singleFlight.executeAsync("key",
+                () -> CompletableFuture.completedFuture("value")).join());
+    }
+
+    /**
+     * Waits until the threads are all blocked, the first one in the loader and the others on the load in flight.
+     */
+    private static void awaitWaiting(List<Thread> threads, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (threads.size() < count || !threads.stream().allMatch(thread -> thread.getState() == Thread.State.WAITING
+                || thread.getState() == Thread.State.TIMED_WAITING)) {
+            assertTrue(System.currentTimeMillis() < deadline, "callers not waiting");
+            Thread.sleep(10);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package gov.nih.nci.bento.model.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteBehindQueueTest {
+    private final BlockingWriter writer = new BlockingWriter();
+    private WriteBehindQueue queue;
+
+    @AfterEach
+    void closeQueue() {
+        writer.release.countDown();
+        if (queue != null) {
+            queue.close();
+        }
+    }
+
+    @Test
+    void coalescesQueuedValues() throws InterruptedException {
+        queue = new WriteBehindQueue("test-write-behind", 10, 10, writer);
+        blockWriter();
+        assertTrue(queue.offer("a", 1));
+        assertTrue(queue.offer("a", 2));
+        assertEquals(2, queue.get("a"));
+        writer.release.countDown();
+        queue.close();
+        assertEquals(2, writer.stored.get("a"));
+        assertEquals(1L, queue.getMetrics().get("coalesced"));
+    }
+
+    @Test
+    void readsBackEntriesUntilTheyAreWritten() throws InterruptedException {
+        queue = new WriteBehindQueue("test-write-behind", 10, 10, writer);
+        blockWriter();
+        // Taken by the writer, still readable while it is being written
+        assertEquals("blocked", queue.get("blocker"));
+        queue.offer("a", 1);
+        assertEquals(1, queue.get("a"));
+        writer.release.countDown();
+        queue.close();
+        assertNull(queue.get("a"));
+        assertNull(queue.get("blocker"));
+    }
+
+    @Test
+    void dropsEntriesOnceFull() throws InterruptedException {
+        queue = new WriteBehindQueue("test-write-behind", 2, 10, writer);
+        blockWriter();
+        assertTrue(queue.offer("a", 1));
+        assertTrue(queue.offer("b", 1));
+        assertFalse(queue.offer("c", 1));
+        // A queued key is still replaced
+        assertTrue(queue.offer("a", 2));
+        assertEquals(1L, queue.getMetrics().get("dropped"));
+    }
+
+    @Test
+    void skipsOnlyTheDiscardedKeyOfABatchBeingWritten() throws InterruptedException {
+        queue = new WriteBehindQueue("test-write-behind", 10, 10, writer);
+        blockWriter("a", "b", "c");
+        queue.discard("b");
+        assertNull(queue.get("b"));
+        assertEquals(1, queue.get("a"));
+        writer.release.countDown();
+        queue.close();
+        assertEquals(Map.of("a", 1, "c", 1), writer.stored);
+        assertEquals(2L, queue.getMetrics().get("written"));
+        assertEquals(1L, queue.getMetrics().get("skipped"));
+    }
+
+    @Test
+    void discardsEveryEntry() throws InterruptedException {
+        queue = new WriteBehindQueue("test-write-behind", 10, 10, writer);
+        blockWriter("a", "b");
+        queue.offer("c", 1);
+        queue.discard(null);
+        assertNull(queue.get("a"));
+        assertNull(queue.get("c"));
+        writer.release.countDown();
+        queue.close();
+        assertTrue(writer.stored.isEmpty());
+        assertEquals(0L, queue.getMetrics().get("written"));
+        assertEquals(2L, queue.getMetrics().get("skipped"));
+    }
+
+    @Test
+    void drainsPendingEntriesOnClose() throws InterruptedException {
+        queue = new WriteBehindQueue("test-write-behind", 100, 3, writer);
+        blockWriter();
+        for (int i = 0; i < 10; i++) {
+            queue.offer("key-" + i, i);
+        }
+        writer.release.countDown();
+        queue.close();
+        assertEquals(11, writer.stored.size());
+        assertEquals(11L, queue.getMetrics().get("written"));
+        assertEquals(0, queue.getMetrics().get("depth"));
+        assertFalse(queue.offer("late", 1));
+    }
+
+    @Test
+    void countsFailedBatches() {
+        queue = new WriteBehindQueue("test-write-behind", 10, 10, (batch, current) -> {
+            throw new IllegalStateException("Redis unavailable");
+        });
+        queue.offer("a", 1);
+        queue.offer("b", 1);
+        queue.close();
+        assertEquals(2L, queue.getMetrics().get("failed"));
+        assertEquals(0L, queue.getMetrics().get("written"));
+    }
+
+    /**
+     * Offers the keys and waits until the writer has taken them as one batch, the writer then holds that batch until
+     * released.
+     */
+    private void blockWriter(String... keys) throws InterruptedException {
+        if (keys.length == 0) {
+            keys = new String[]{"blocker"};
+        }
+        // Holding the monitor of the queue keeps the writer from taking the keys before they are all queued
+        synchronized (queue) {
+            for (String key : keys) {
+                queue.offer(key, key.equals("blocker") ? "blocked" : 1);
+            }
+        }
+        assertTrue(writer.blocked.await(5, TimeUnit.SECONDS));
+    }
+
+    private static class BlockingWriter implements WriteBehindQueue.Writer {
+        private final CountDownLatch blocked = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final Map<String, Object> stored = new ConcurrentHashMap<>();
+
+        @Override
+        public int write(Map<String, Object> batch, Predicate<String> current) {
+            blocked.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            int count = 0;
+            for (Map.Entry<String, Object> entry : batch.entrySet()) {
+                if (current.test(entry.getKey())) {
+                    stored.put(entry.getKey(), entry.getValue());
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package gov.nih.nci.bento.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CircuitBreakerTest {
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(150);
+
+    @Test
+    void staysClosedBelowTheMinimumCalls() {
+        CircuitBreaker breaker = breaker(60_000);
+        for (int i = 0; i < 4; i++) {
+            breaker.record(breaker.tryAcquire(), FAST, true);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void opensAtTheFailureRate() {
+        CircuitBreaker breaker = breaker(60_000);
+        for (int i = 0; i < 5; i++) {
+            breaker.record(breaker.tryAcquire(), FAST, i % 2 == 0);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertNull(breaker.tryAcquire());
+        assertEquals(1L, breaker.getMetrics().get("rejectedCalls"));
+        assertEquals(1L, breaker.getMetrics().get("timesOpened"));
+    }
+
+    @Test
+    void opensAtTheSlowCallRate() {
+        CircuitBreaker breaker = breaker(60_000);
+        for (int i = 0; i < 5; i++) {
+            breaker.record(breaker.tryAcquire(), i < 3 ? SLOW : FAST, false);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void scalesTheSlowCallDurationByPipelinedCommands() {
+        CircuitBreaker breaker = breaker(60_000);
+        for (int i = 0; i < 10; i++) {
+            breaker.record(breaker.tryAcquire(), SLOW, false, 10);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.getMetrics().get("slowCallRate"));
+    }
+
+    @Test
+    void forgetsOutcomesOutsideTheWindow() {
+        CircuitBreaker breaker = breaker(60_000);
+        for (int i = 0; i < 10; i++) {
+            breaker.record(breaker.tryAcquire(), FAST, i % 3 == 2);
+        }
+        assertEquals(30, breaker.getMetrics().get("failureRate"));
+        for (int i = 0; i < 9; i++) {
+            breaker.record(breaker.tryAcquire(), FAST, false);
+        }
+        assertEquals(0, breaker.getMetrics().get("failureRate"));
+        assertEquals(10, breaker.getMetrics().get("bufferedCalls"));
+    }
+
+    @Test
+    void admitsOnlyTheProbeCallsWhenHalfOpen() {
+        CircuitBreaker breaker = openBreaker();
+        assertNotNull(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertNotNull(breaker.tryAcquire());
+        assertNull(breaker.tryAcquire());
+    }
+
+    @Test
+    void closesAfterSuccessfulProbes() {
+        CircuitBreaker breaker = openBreaker();
+        CircuitBreaker.Permit first = breaker.tryAcquire();
+        CircuitBreaker.Permit second = breaker.tryAcquire();
+        breaker.record(first, FAST, false);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.record(second, FAST, false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        // The failures that opened the circuit are gone
+        assertEquals(0, breaker.getMetrics().get("bufferedCalls"));
+        breaker.record(breaker.tryAcquire(), FAST, true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void reopensOnAFailedProbe() {
+        CircuitBreaker breaker = openBreaker();
+        breaker.record(breaker.tryAcquire(), FAST, true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(2L, breaker.getMetrics().get("timesOpened"));
+    }
+
+    @Test
+    void reopensOnASlowProbe() {
+        CircuitBreaker breaker = openBreaker();
+        breaker.record(breaker.tryAcquire(), SLOW, false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void ignoresCallsCompletingAfterTheStateChanged() {
+        CircuitBreaker breaker = breaker(0);
+        CircuitBreaker.Permit late = breaker.tryAcquire();
+        for (int i = 0; i < 5; i++) {
+            breaker.record(breaker.tryAcquire(), FAST, true);
+        }
+        CircuitBreaker.Permit probe = breaker.tryAcquire();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        // Neither counts as a probe, nor reopens the circuit
+        breaker.record(late, FAST, false);
+        breaker.record(late, FAST, true);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertNotNull(breaker.tryAcquire());
+        assertNull(breaker.tryAcquire());
+        breaker.record(probe, FAST, false);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    }
+
+    private static CircuitBreaker breaker(long openMillis) {
+        return new CircuitBreaker(10, 5, 50, 50, 100, openMillis, 2);
+    }
+
+    private static CircuitBreaker openBreaker() {
+        CircuitBreaker breaker = breaker(0);
+        for (int i = 0; i < 5; i++) {
+            breaker.record(breaker.tryAcquire(), FAST, true);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        return breaker;
+    }
+}
@@ -0,0 +1,49 @@
+package gov.nih.nci.bento.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class IdDictionaryTest {
+    // Never initialized, the dictionary keeps its mapping in process
+    private final IdDictionary dictionary = new IdDictionary(new RedisService(), "subjects", 10);
+
+    @Test
+    void assignsDenseStableInts() {
+        assertArrayEquals(new int[]{0, 1, 2}, dictionary.encode(List.of("a", "b", "c")));
+        assertArrayEquals(new int[]{2, 3, 0, 3}, dictionary.encode(List.of("c", "d", "a", "d")));
+    }
+
+    @Test
+    void roundTrips() {
+        List<String> values = List.of("SUBJ-1", "SUBJ-2", "SUBJ-3");
+        assertEquals(values, dictionary.decode(dictionary.encode(values)));
+    }
+
+    @Test
+    void decodesUnknownIntsToNull() {
+        dictionary.encode(List.of("a"));
+        List<String> decoded = dictionary.decode(new int[]{0, 5});
+        assertEquals("a", decoded.get(0));
+        assertNull(decoded.get(1));
+    }
+
+    @Test
+    void keepsTheWholeMappingWithoutRedis() {
+        // The maximum only bounds a copy of the mapping held in Redis
+        for (int i = 0; i < 50; i++) {
+            dictionary.encode(List.of("id-" + i));
+        }
+        assertArrayEquals(new int[]{0, 49}, dictionary.encode(List.of("id-0", "id-49")));
+        assertEquals(List.of("id-0", "id-49"), dictionary.decode(new int[]{0, 49}));
+    }
+
+    @Test
+    void hasALocalEpoch() {
+        assertEquals("local", dictionary.getEpoch());
+    }
+}
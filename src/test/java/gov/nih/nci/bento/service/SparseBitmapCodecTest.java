@@ -0,0 +1,99 @@
+package gov.nih.nci.bento.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SparseBitmapCodecTest {
+
+    @Test
+    void roundTripsEmptyBitmaps() throws IOException {
+        BitSet empty = new BitSet();
+        byte[] encoded = encode(empty);
+        assertEquals(1, encoded.length);
+        assertEquals(empty, decode(encoded));
+    }
+
+    @Test
+    void roundTripsSparseValues() throws IOException {
+        BitSet bitmap = bitmap(0, 7, 65535, 65536, 1_000_000, Integer.MAX_VALUE - 1);
+        byte[] encoded = encode(bitmap);
+        assertEquals(bitmap, decode(encoded));
+        // A few bytes per value, however large the values are
+        assertTrue(encoded.length < 40, "encoded " + encoded.length + " bytes");
+    }
+
+    @Test
+    void roundTripsRuns() throws IOException {
+        BitSet bitmap = new BitSet();
+        bitmap.set(100, 60_000);
+        bitmap.set(70_000, 200_000);
+        bitmap.set(300_000);
+        byte[] encoded = encode(bitmap);
+        assertEquals(bitmap, decode(encoded));
+        assertTrue(encoded.length < 40, "encoded " + encoded.length + " bytes");
+    }
+
+    @Test
+    void roundTripsDenseChunks() throws IOException {
+        BitSet bitmap = new BitSet();
+        for (int i = 0; i < 3 * 65536; i += 2) {
+            bitmap.set(i);
+        }
+        byte[] encoded = encode(bitmap);
+        assertEquals(bitmap, decode(encoded));
+        // Every other bit set is neither an array nor runs, the chunks are written as plain bitmaps
+        assertTrue(encoded.length <= 3 * (8192 + 4), "encoded " + encoded.length + " bytes");
+    }
+
+    @Test
+    void rejectsTruncatedInput() throws IOException {
+        byte[] encoded = encode(bitmap(1, 2, 3, 100_000, 100_001));
+        for (int length = 0; length < encoded.length; length++) {
+            byte[] truncated = Arrays.copyOf(encoded, length);
+            assertThrows(IOException.class, () -> decode(truncated), "length " + length);
+        }
+    }
+
+    @Test
+    void rejectsInvalidContainers() {
+        // One chunk of an unknown container type
+        assertThrows(IOException.class, () -> decode(new byte[]{1, 0, 3}));
+        // An array container claiming more values than a chunk holds
+        assertThrows(IOException.class, () -> decode(new byte[]{1, 0, 0, (byte) 0x81, (byte) 0x80, 0x04}));
+        // An array value beyond the chunk
+        assertThrows(IOException.class, () -> decode(new byte[]{1, 0, 0, 1, (byte) 0x80, (byte) 0x80, 0x04}));
+    }
+
+    private static BitSet bitmap(int... values) {
+        BitSet bitmap = new BitSet();
+        for (int value : values) {
+            bitmap.set(value);
+        }
+        return bitmap;
+    }
+
+    private static byte[] encode(BitSet bitmap) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(baos)) {
+            SparseBitmapCodec.encode(out, bitmap);
+        }
+        return baos.toByteArray();
+    }
+
+    private static BitSet decode(byte[] data) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            return SparseBitmapCodec.decode(in);
+        }
+    }
+}